@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.test.bank.accountservice.dto.AccountDetailDTO;
+import com.test.bank.accountservice.dto.TransactionDetailDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the response of {@code GET /v1/accounts/{id}} with its five most recent
+ * transactions, as the MVC message converter does. Run with the GC profiler to see the
+ * allocation rate per response:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.AccountDetailSerializationBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountDetailSerializationBenchmark {
+
+    private ObjectWriter writer;
+    private AccountDetailDTO accountDetail;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        writer = new ObjectMapper().writerFor(AccountDetailDTO.class);
+
+        accountDetail = new AccountDetailDTO();
+        accountDetail.setAccountId(1L);
+        accountDetail.setAccountNumber("100000009");
+        accountDetail.setAccountPin("1234");
+        accountDetail.setHolderFullName("Jaime Flores");
+        accountDetail.setHolderId("522665465785546963");
+        accountDetail.setCurrentBalance(new BigDecimal("1520.75"));
+        final List<TransactionDetailDTO> transactions = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final TransactionDetailDTO transaction = new TransactionDetailDTO();
+            transaction.setTransactionId(String.valueOf(1100000000000000000L + i));
+            transaction.setAmount(new BigDecimal("-12.34"));
+            transaction.setTransactionDate("17-Oct-2019 11:42:0" + i);
+            transaction.setTransactionType("WITHDRAWAL");
+            transaction.setDescription("ATM");
+            transactions.add(transaction);
+        }
+        accountDetail.setLastTransactions(transactions);
+    }
+
+    @Benchmark
+    public byte[] writeAccountDetail() throws JsonProcessingException {
+        return writer.writeValueAsBytes(accountDetail);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(AccountDetailSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.AccountServiceApplication;
+import com.test.bank.accountservice.dto.AccountRequestDTO;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.service.AccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of deposits through the full service on the in-memory database, each thread
+ * posting to an account of its own. With striped account locks the threads only meet on
+ * the connection pool and the database, so throughput should grow with the thread count
+ * up to the cores available. The main method runs it with 1, 2, 4 and 8 threads:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.AccountLockScalingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountLockScalingBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    @Param({"STRIPED", "OPTIMISTIC", "SHARDED"})
+    private String concurrencyMode;
+
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private long[] accountIds;
+    private final AtomicInteger nextAccount = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // OPTIMISTIC mode only starts on H2's page store, see OptimisticLockingValidator.
+        final String url = "jdbc:h2:mem:prod" + ("OPTIMISTIC".equals(concurrencyMode) ? ";MV_STORE=FALSE" : "");
+        context = new SpringApplicationBuilder(AccountServiceApplication.class).run("--server.port=0",
+                "--logging.level.root=WARN", "--spring.datasource.url=" + url,
+                "--bank.transaction.concurrency-mode=" + concurrencyMode);
+        accountService = context.getBean(AccountService.class);
+
+        accountIds = new long[THREAD_COUNTS[THREAD_COUNTS.length - 1]];
+        for (int i = 0; i < accountIds.length; i++) {
+            final ResponseDTO opened = accountService.openAccount(
+                    new AccountRequestDTO("Bench", "Mark", "1234", "1234", UUID.randomUUID().toString()));
+            accountIds[i] = accountService.searchAccount(opened.getAccountNumber(), "1234").getAccountId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class OwnAccount {
+        private long accountId;
+
+        @Setup(Level.Trial)
+        public void setUp(AccountLockScalingBenchmark benchmark) {
+            accountId = benchmark.accountIds[benchmark.nextAccount.getAndIncrement() % benchmark.accountIds.length];
+        }
+    }
+
+    @Benchmark
+    public ResponseDTO deposit(OwnAccount account) {
+        return accountService.makeDeposit(account.accountId, new TransactionRequestDTO(BigDecimal.ONE, "Benchmark"));
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .parent(new CommandLineOptions(args))
+                    .include(AccountLockScalingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
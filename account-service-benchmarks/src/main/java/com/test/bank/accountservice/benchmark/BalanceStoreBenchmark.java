@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.service.BalanceCache;
+import com.test.bank.accountservice.service.BalanceStore;
+import com.test.bank.accountservice.service.OffHeapBalanceStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads random balances from a store holding every account, on the heap and off it. Run
+ * with the GC profiler to compare the allocation rate and the time spent collecting; the
+ * heap store is sized to hold all accounts so both serve every read:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.BalanceStoreBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BalanceStoreBenchmark {
+
+    @Param({"HEAP", "OFF_HEAP"})
+    private String store;
+
+    @Param({"1000000"})
+    private int accounts;
+
+    private BalanceStore balanceStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        balanceStore = "HEAP".equals(store) ? new BalanceCache(accounts, 16) : new OffHeapBalanceStore(accounts);
+        for (long accountId = 1; accountId <= accounts; accountId++) {
+            balanceStore.load(accountId, accountId * 100, 0, AccountStatus.ACTIVE, balanceStore.generation(accountId));
+        }
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return balanceStore.getBalance(ThreadLocalRandom.current().nextInt(accounts) + 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(BalanceStoreBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
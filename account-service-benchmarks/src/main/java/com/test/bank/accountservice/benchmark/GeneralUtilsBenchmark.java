@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.service.AccountNumberAllocator;
+import com.test.bank.accountservice.util.GeneralUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The helpers called for every transaction row and every account opening: date formatting
+ * for the DTOs, pin validation and account number allocation. The allocator runs against
+ * a stub sequence, so the block reservation does not leave the JVM. Run with the GC
+ * profiler to see the allocation rate per call:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.GeneralUtilsBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneralUtilsBenchmark {
+
+    private LocalDateTime transactionDate;
+    private String pin;
+    private AccountNumberAllocator accountNumberAllocator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionDate = LocalDateTime.of(2019, 10, 17, 11, 42, 7);
+        pin = "1234";
+        final AtomicLong sequence = new AtomicLong(10000000L);
+        accountNumberAllocator = new AccountNumberAllocator(new JdbcTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T queryForObject(String sql, Class<T> requiredType) {
+                return (T) Long.valueOf(sequence.getAndAdd(100));
+            }
+        }, 100);
+    }
+
+    @Benchmark
+    public String formatDateTimeToString() {
+        return GeneralUtils.formatDateTimeToString(transactionDate);
+    }
+
+    @Benchmark
+    public boolean isPinNumericNonZero() {
+        return GeneralUtils.isPinNumericNonZero(pin);
+    }
+
+    @Benchmark
+    public String nextAccountNumber() {
+        return accountNumberAllocator.nextAccountNumber();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(GeneralUtilsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
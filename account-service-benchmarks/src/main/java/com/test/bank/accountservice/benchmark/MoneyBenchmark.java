@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.util.Money;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the balance arithmetic of a withdrawal done with {@link BigDecimal} against
+ * the same steps on {@link Money} minor units. Run with the GC profiler to see the
+ * allocation rate per operation:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.MoneyBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000.00");
+
+    private BigDecimal balance;
+    private BigDecimal amount;
+    private long balanceMinor;
+    private long amountMinor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        balance = INITIAL_BALANCE;
+        amount = new BigDecimal("12.34");
+        balanceMinor = Money.toMinorUnits(balance);
+        amountMinor = Money.toMinorUnits(amount);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalWithdrawal() {
+        final BigDecimal signedAmount = amount.multiply(new BigDecimal(-1));
+        if (balance.add(signedAmount).compareTo(BigDecimal.ZERO) < 0) {
+            balance = INITIAL_BALANCE;
+        }
+        balance = balance.subtract(amount);
+        return balance;
+    }
+
+    @Benchmark
+    public long minorUnitsWithdrawal() {
+        final long signedAmount = Money.negate(amountMinor);
+        if (Money.add(balanceMinor, signedAmount) < 0) {
+            balanceMinor = Money.toMinorUnits(INITIAL_BALANCE);
+        }
+        balanceMinor = Money.subtract(balanceMinor, amountMinor);
+        return balanceMinor;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the account lookups of the service against an in-memory H2 schema built
+ * with and without the indexes declared on {@link com.test.bank.accountservice.model.Account}
+ * and {@link com.test.bank.accountservice.model.AccountTransaction}. The defaults fit a
+ * small heap; the full size needs a few gigabytes:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.SchemaIndexBenchmark \
+ *     -p accounts=1000000 -p transactionsPerAccount=50 -jvmArgsAppend -Xmx12g
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SchemaIndexBenchmark {
+
+    private static final String[] INDEXES = {
+            "create unique index ux_account_number on account(account_number)",
+            "create index ix_account_holder_id on account(holder_id)",
+            "create index ix_account_transaction_account_date on account_transaction(account_id, transaction_date desc, id desc)"
+    };
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    @Param("100000")
+    public int accounts;
+
+    @Param("20")
+    public int transactionsPerAccount;
+
+    private Connection connection;
+    private PreparedStatement byNumberAndPin;
+    private PreparedStatement byHolder;
+    private PreparedStatement recentTransactions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:index-benchmark;MV_STORE=FALSE;LOG=0;UNDO_LOG=0", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table account(id bigint primary key, account_number varchar(255), "
+                    + "first_name varchar(255), last_name varchar(255), pin varchar(4), holder_id varchar(255), "
+                    + "status varchar(255), version bigint default 0, balance_minor bigint default 0)");
+            statement.execute("create table account_transaction(id varchar(36) primary key, transaction_date timestamp, "
+                    + "transaction_type varchar(255), amount_minor bigint not null, description varchar(255), "
+                    + "transfer_id varchar(36), account_id bigint references account(id))");
+            statement.execute("insert into account(id, account_number, first_name, last_name, pin, holder_id, status) "
+                    + "select x, 'AC' || x, 'Jaime', 'Flores', '1234', 'H' || x, 'ACTIVE' from system_range(1, " + accounts + ")");
+            statement.execute("insert into account_transaction(id, transaction_date, transaction_type, amount_minor, account_id) "
+                    + "select random_uuid(), dateadd('SECOND', x, timestamp '2019-01-01 00:00:00'), 'DEPOSIT', 100, "
+                    + "1 + mod(x, " + accounts + ") from system_range(1, " + (long) accounts * transactionsPerAccount + ")");
+            if (indexed) {
+                for (String index : INDEXES) {
+                    statement.execute(index);
+                }
+            }
+            statement.execute("analyze");
+        }
+        byNumberAndPin = connection.prepareStatement("select id, balance_minor from account where account_number = ? and pin = ?");
+        byHolder = connection.prepareStatement("select id from account where holder_id = ?");
+        recentTransactions = connection.prepareStatement("select id, amount_minor, transaction_type, description, transaction_date "
+                + "from account_transaction where account_id = ? order by transaction_date desc, id desc limit 5");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long findByAccountNumberAndPin() throws SQLException {
+        byNumberAndPin.setString(1, "AC" + randomAccountId());
+        byNumberAndPin.setString(2, "1234");
+        return firstLong(byNumberAndPin);
+    }
+
+    @Benchmark
+    public long findByHolderId() throws SQLException {
+        byHolder.setString(1, "H" + randomAccountId());
+        return firstLong(byHolder);
+    }
+
+    @Benchmark
+    public long findRecentTransactions() throws SQLException {
+        recentTransactions.setLong(1, randomAccountId());
+        long sum = 0;
+        try (ResultSet resultSet = recentTransactions.executeQuery()) {
+            while (resultSet.next()) {
+                sum += resultSet.getLong(2);
+            }
+        }
+        return sum;
+    }
+
+    private long randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(accounts);
+    }
+
+    private static long firstLong(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SchemaIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
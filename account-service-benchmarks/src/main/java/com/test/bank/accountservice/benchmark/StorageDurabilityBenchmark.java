@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.AccountServiceApplication;
+import com.test.bank.accountservice.dto.AccountRequestDTO;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.service.AccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of deposits through the full service, {@code processTransaction} down to the
+ * commit, on the in-memory database and on the {@code durable} profile. The difference is
+ * the cost of writing the transaction log at every commit. Run with:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.StorageDurabilityBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class StorageDurabilityBenchmark {
+
+    @Param({"memory", "durable"})
+    private String storage;
+
+    @Param("1000")
+    private int accounts;
+
+    private File dataDir;
+    private ConfigurableApplicationContext context;
+    private AccountService accountService;
+    private long[] accountIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("bank-benchmark").toFile();
+        final SpringApplicationBuilder application = new SpringApplicationBuilder(AccountServiceApplication.class);
+        if ("durable".equals(storage)) {
+            application.profiles("durable");
+        }
+        context = application.run("--server.port=0", "--logging.level.root=WARN",
+                "--bank.data-dir=" + dataDir.getAbsolutePath());
+        accountService = context.getBean(AccountService.class);
+
+        accountIds = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            final ResponseDTO opened = accountService.openAccount(
+                    new AccountRequestDTO("Bench", "Mark", "1234", "1234", UUID.randomUUID().toString()));
+            accountIds[i] = accountService.searchAccount(opened.getAccountNumber(), "1234").getAccountId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public ResponseDTO deposit() {
+        final long accountId = accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)];
+        return accountService.makeDeposit(accountId, new TransactionRequestDTO(BigDecimal.ONE, "Benchmark"));
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(StorageDurabilityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
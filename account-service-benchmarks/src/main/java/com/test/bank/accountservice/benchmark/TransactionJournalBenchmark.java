@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.journal.JournalRecord;
+import com.test.bank.accountservice.journal.TransactionJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures appends to the {@link TransactionJournal} from several threads, each one
+ * waiting for its record to be on disk or not. Postings never wait for the journal, so
+ * the durable deposit measured by {@link StorageDurabilityBenchmark} only pays for the
+ * append:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.TransactionJournalBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TransactionJournalBenchmark {
+
+    @Param({"true", "false"})
+    private boolean awaitDurable;
+
+    private Path directory;
+    private TransactionJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new TransactionJournal(directory.toString(), 1 << 20, 10);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        final long sequence = journal.append(new JournalRecord(0, System.nanoTime(), 42L, TransactionType.DEPOSIT,
+                AccountStatus.ACTIVE, 100L, 100L, 1L, System.currentTimeMillis()));
+        if (awaitDurable) {
+            journal.awaitDurable(sequence);
+        }
+        return sequence;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TransactionJournalBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.benchmark;
+
+import com.test.bank.accountservice.concurrency.AccountLockRegistry;
+import com.test.bank.accountservice.concurrency.ConcurrencyMode;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.model.AccountTransaction;
+import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.repository.AccountTransactionRepository;
+import com.test.bank.accountservice.service.AccountServiceImpl;
+import com.test.bank.accountservice.service.AccountServiceMetrics;
+import com.test.bank.accountservice.service.BalanceCache;
+import com.test.bank.accountservice.service.RecentTransactionsCache;
+import com.test.bank.accountservice.util.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts deposits and withdrawals through {@link AccountServiceImpl} in STRIPED mode, with
+ * in-memory repositories and a transaction manager that only runs the synchronization
+ * callbacks. What is left is the service itself: validation, the balance arithmetic and
+ * overdraft check, the account lock, the transaction template and the cache updates.
+ * Run with the GC profiler to see the allocation rate per posting:
+ * <pre>
+ * mvn -pl account-service-benchmarks -am package -DskipTests
+ * java -cp account-service-benchmarks/target/classes:$(cat account-service-benchmarks/target/classpath.txt) \
+ *     com.test.bank.accountservice.benchmark.TransactionPostingBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionPostingBenchmark {
+
+    private static final long ACCOUNT_ID = 1L;
+
+    private AccountServiceImpl accountService;
+    private TransactionRequestDTO deposit;
+    private TransactionRequestDTO withdrawal;
+    private TransactionRequestDTO overdraft;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Account account = new Account();
+        account.setId(ACCOUNT_ID);
+        account.setAccountNumber("100000009");
+        account.setStatus(AccountStatus.ACTIVE);
+
+        final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+        accounts.put(ACCOUNT_ID, account);
+        final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+        accountService = new AccountServiceImpl();
+        ReflectionTestUtils.setField(accountService, "accountRepository", repository(AccountRepository.class,
+                (method, args) -> {
+                    if ("findById".equals(method) || "findForUpdateById".equals(method)) {
+                        return Optional.ofNullable(accounts.get((Long) args[0]));
+                    }
+                    return "save".equals(method) ? args[0] : null;
+                }));
+        ReflectionTestUtils.setField(accountService, "accountTransactionRepository", repository(AccountTransactionRepository.class,
+                (method, args) -> {
+                    if ("save".equals(method)) {
+                        ((AccountTransaction) args[0]).setId(idGenerator.nextId());
+                        return args[0];
+                    }
+                    return null;
+                }));
+        ReflectionTestUtils.setField(accountService, "accountLockRegistry", new AccountLockRegistry(1024));
+        ReflectionTestUtils.setField(accountService, "transactionTemplate", new TransactionTemplate(new SynchronizationOnlyTransactionManager()));
+        ReflectionTestUtils.setField(accountService, "balanceStore", new BalanceCache(100000, 16));
+        ReflectionTestUtils.setField(accountService, "recentTransactionsCache", new RecentTransactionsCache(5));
+        ReflectionTestUtils.setField(accountService, "accountServiceMetrics", new AccountServiceMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(accountService, "concurrencyMode", ConcurrencyMode.STRIPED);
+
+        deposit = new TransactionRequestDTO(new BigDecimal("12.34"), "Salary");
+        withdrawal = new TransactionRequestDTO(new BigDecimal("12.34"), "ATM");
+        overdraft = new TransactionRequestDTO(new BigDecimal("1000000000.00"), "ATM");
+    }
+
+    @Benchmark
+    public ResponseDTO depositThenWithdraw() {
+        accountService.makeDeposit(ACCOUNT_ID, deposit);
+        return accountService.makeWithdrawal(ACCOUNT_ID, withdrawal);
+    }
+
+    @Benchmark
+    public String rejectedOverdraft() {
+        try {
+            return accountService.makeWithdrawal(ACCOUNT_ID, overdraft).getTransactionId();
+        } catch (ApiException e) {
+            return e.getMessage();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TransactionPostingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T repository(Class<T> type, RepositoryMethod handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method.getName(), args));
+    }
+
+    private interface RepositoryMethod {
+        Object invoke(String method, Object[] args);
+    }
+
+    /**
+     * Begins and commits nothing, but still drives the transaction synchronizations the
+     * caches register, as a real commit would.
+     */
+    private static final class SynchronizationOnlyTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
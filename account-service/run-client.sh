@@ -1 +1 @@
-java -jar -Dloader.main=com.test.bank.view.BankMainInterface target/account-service-0.0.1-SNAPSHOT.jar
+java -jar -Dloader.main=com.test.bank.view.BankMainInterface target/account-service-0.0.1-SNAPSHOT-exec.jar
@@ -0,0 +1 @@
+java -jar -Dloader.main=com.test.bank.view.LoadGenerator target/account-service-0.0.1-SNAPSHOT-exec.jar "$@"
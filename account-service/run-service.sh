@@ -1,2 +1,2 @@
-java -Dspring.jmx.enabled=false -noverify -jar target/account-service-0.0.1-SNAPSHOT.jar
+java -Dspring.jmx.enabled=false -noverify -jar target/account-service-0.0.1-SNAPSHOT-exec.jar
 
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.concurrency;
+
+import com.test.bank.accountservice.timing.RequestTimings;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped lock table keyed by account id.
+ * <p>
+ * Operations on the same account are serialized while operations on accounts that
+ * fall into different stripes run in parallel. When called inside a transaction the
+ * locks are held until the transaction completes, so the next writer of the account
+ * always reads the committed balance. Work starting its own transaction releases them
+ * as soon as it returns.
+ * <p>
+ * The number of threads blocked on a stripe is exposed as the
+ * {@code bank.account.lock.waiting} gauge.
+ */
+@Component
+public class AccountLockRegistry implements MeterBinder {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public AccountLockRegistry(@Value("${bank.account.lock-stripes:1024}") int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T executeLocked(long accountId, Supplier<T> work) {
+        return executeLocked(Collections.singleton(accountId), work);
+    }
+
+    /**
+     * Runs the work holding the stripes of every given account. Stripes are always
+     * acquired in ascending index order, so callers locking several accounts can not
+     * deadlock each other.
+     */
+    public <T> T executeLocked(Collection<Long> accountIds, Supplier<T> work) {
+        final TreeSet<Integer> indexes = new TreeSet<>();
+        for (Long accountId : accountIds) {
+            indexes.add(stripeIndex(accountId));
+        }
+
+        final long lockStart = RequestTimings.start();
+        for (Integer index : indexes) {
+            stripes[index].lock();
+        }
+        RequestTimings.stop(RequestTimings.Phase.LOCK, lockStart);
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            try {
+                return work.get();
+            } finally {
+                unlock(indexes);
+            }
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(indexes);
+            }
+        });
+        return work.get();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return an estimate of the threads currently waiting for any stripe
+     */
+    public int getWaitingThreads() {
+        int waiting = 0;
+        for (ReentrantLock stripe : stripes) {
+            waiting += stripe.getQueueLength();
+        }
+        return waiting;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("bank.account.lock.waiting", this, AccountLockRegistry::getWaitingThreads)
+                .description("Threads waiting to lock an account stripe")
+                .register(registry);
+    }
+
+    int stripeIndex(long accountId) {
+        final int hash = Long.hashCode(accountId);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void unlock(TreeSet<Integer> indexes) {
+        for (Integer index : indexes.descendingSet()) {
+            stripes[index].unlock();
+        }
+    }
+}
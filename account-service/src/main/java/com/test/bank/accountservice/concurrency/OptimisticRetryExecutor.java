@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.concurrency;
+
+import com.test.bank.accountservice.exception.ConcurrentUpdateException;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs account updates without JVM or row locks, leaving concurrent writers of an account
+ * to the {@code @Version} column of {@link com.test.bank.accountservice.model.Account},
+ * checked by the update. Every attempt runs in its own transaction; attempts that fail on
+ * a version conflict, a lock timeout or a deadlock are retried with an exponential,
+ * jittered backoff until the configured number of attempts is exhausted. H2 only detects
+ * the conflicts on its page store, see
+ * {@link com.test.bank.accountservice.config.OptimisticLockingValidator}.
+ */
+@Component
+@Log4j2
+public class OptimisticRetryExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public OptimisticRetryExecutor(PlatformTransactionManager transactionManager,
+                                   @Value("${bank.transaction.optimistic.max-attempts:5}") int maxAttempts,
+                                   @Value("${bank.transaction.optimistic.initial-backoff-ms:2}") long initialBackoffMs,
+                                   @Value("${bank.transaction.optimistic.max-backoff-ms:50}") long maxBackoffMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (ConcurrencyFailureException | OptimisticLockException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Giving up after {} conflicting attempts", attempt);
+                    throw new ConcurrentUpdateException("The account is being updated concurrently, please retry the operation.");
+                }
+                log.debug("Concurrent update on attempt {}, retrying", attempt);
+                pause(backoff);
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            }
+        }
+    }
+
+    private void pause(long backoff) {
+        if (backoff <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("The operation was interrupted while waiting to retry.");
+        }
+    }
+}
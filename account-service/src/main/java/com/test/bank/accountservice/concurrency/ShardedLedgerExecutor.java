@@ -0,0 +1,331 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.concurrency;
+
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import com.test.bank.accountservice.timing.RequestTimings;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Single-writer transaction engine. Every account is hashed onto one of N shards and
+ * each shard applies its postings sequentially on a dedicated thread fed by a bounded,
+ * array-backed queue. Since an account is only ever written by its shard thread no
+ * locks are taken; the calling thread simply waits for the result.
+ * <p>
+ * Shards group commit: postings that arrive within a short window are applied in one
+ * database transaction, flushed as JDBC batches, and their callers are only completed
+ * once that transaction has committed.
+ * <p>
+ * Work on accounts of several shards enters the shards in ascending order. Every shard
+ * but the last holds its thread idle until the next ones have run the work, so the last
+ * shard runs it while no other thread writes any of its accounts. A shard only ever waits
+ * for higher ones, so two such operations can not wait for each other.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.transaction.concurrency-mode", havingValue = "SHARDED")
+@Log4j2
+public class ShardedLedgerExecutor {
+
+    private final Shard[] shards;
+    private final TransactionTemplate transactionTemplate;
+    private final long submitTimeoutMs;
+    private final long resultTimeoutMs;
+    private final int groupMaxItems;
+    private final long groupWindowNanos;
+
+    public ShardedLedgerExecutor(PlatformTransactionManager transactionManager,
+                                 @Value("${bank.transaction.sharded.shards:0}") int shardCount,
+                                 @Value("${bank.transaction.sharded.queue-capacity:1024}") int queueCapacity,
+                                 @Value("${bank.transaction.sharded.submit-timeout-ms:100}") long submitTimeoutMs,
+                                 @Value("${bank.transaction.sharded.result-timeout-ms:30000}") long resultTimeoutMs,
+                                 @Value("${bank.transaction.sharded.group-commit.max-items:64}") int groupMaxItems,
+                                 @Value("${bank.transaction.sharded.group-commit.window-ms:1}") long groupWindowMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.resultTimeoutMs = resultTimeoutMs;
+        this.groupMaxItems = Math.max(1, groupMaxItems);
+        this.groupWindowNanos = TimeUnit.MILLISECONDS.toNanos(groupWindowMs);
+
+        final int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, queueCapacity);
+            shards[i].start();
+        }
+        log.info("Started sharded ledger with {} shards", count);
+    }
+
+    public <T> T execute(long accountId, Supplier<T> work) {
+        return submit(shards[shardIndex(accountId)], work, true);
+    }
+
+    /**
+     * Runs the work in one transaction owned by every shard of the given accounts.
+     */
+    public <T> T execute(Collection<Long> accountIds, Supplier<T> work) {
+        final int[] indexes = accountIds.stream().mapToInt(this::shardIndex).distinct().sorted().toArray();
+        return executeOnShards(indexes, 0, work);
+    }
+
+    private <T> T executeOnShards(int[] indexes, int from, Supplier<T> work) {
+        if (from == indexes.length - 1) {
+            return submit(shards[indexes[from]], work, true);
+        }
+        return submit(shards[indexes[from]], () -> executeOnShards(indexes, from + 1, work), false);
+    }
+
+    /**
+     * Queues the work on the shard and waits for its result. Work still queued when the
+     * result timeout expires is withdrawn, so a timed out operation was never applied; work
+     * already running is waited for.
+     */
+    private <T> T submit(Shard shard, Supplier<T> work, boolean transactional) {
+        if (Thread.currentThread() == shard) {
+            return transactional ? transactionTemplate.execute(status -> work.get()) : work.get();
+        }
+
+        final Posting<T> posting = new Posting<>(work, transactional);
+        try {
+            if (!shard.queue.offer(posting, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new ApiException(ErrorReason.SERVICE_UNAVAILABLE, "The service is too busy to accept the operation, please retry later.");
+            }
+            try {
+                return posting.result.get(resultTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (posting.claim()) {
+                    throw new ApiException(ErrorReason.TIMEOUT, "The operation timed out before it was applied, please retry later.");
+                }
+                return posting.result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(ErrorReason.SERVICE_UNAVAILABLE, "The operation was interrupted.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    int shardIndex(long accountId) {
+        final int hash = Long.hashCode(accountId);
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shards.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.interrupt();
+        }
+    }
+
+    /**
+     * Applies the postings taken from the queue in order. Postings withdrawn by their caller
+     * are skipped, and one holding the shard for work on other shards ends the current
+     * group, since it must not keep a transaction open while it waits.
+     */
+    private void commit(List<Posting<?>> postings) {
+        final List<Posting<?>> group = new ArrayList<>(postings.size());
+        for (Posting<?> posting : postings) {
+            if (!posting.claim()) {
+                continue;
+            }
+            if (posting.transactional) {
+                group.add(posting);
+            } else {
+                commitGroup(group);
+                group.clear();
+                posting.apply();
+            }
+        }
+        commitGroup(group);
+    }
+
+    /**
+     * Applies a group of postings in one transaction. Rejected postings do not abort the
+     * group; if the transaction itself fails every posting is retried on its own so a
+     * single bad posting can not fail its neighbours.
+     */
+    private void commitGroup(List<Posting<?>> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        if (group.size() == 1) {
+            group.get(0).apply();
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                for (Posting<?> posting : group) {
+                    posting.stage();
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} postings failed, applying them one by one", group.size(), e);
+            for (Posting<?> posting : group) {
+                posting.apply();
+            }
+            return;
+        }
+        for (Posting<?> posting : group) {
+            posting.publish();
+        }
+    }
+
+    /**
+     * A unit of work waiting for its shard. The request timings of the caller are bound
+     * while the work runs on the shard thread, and the time spent queued is recorded as
+     * {@link RequestTimings.Phase#LOCK}, the single-writer equivalent of a lock wait.
+     */
+    private final class Posting<T> {
+        private final Supplier<T> work;
+        private final boolean transactional;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final RequestTimings timings = RequestTimings.current();
+        private final long submitted = RequestTimings.start();
+        private boolean started;
+        private T value;
+        private ApiException rejection;
+
+        private Posting(Supplier<T> work, boolean transactional) {
+            this.work = work;
+            this.transactional = transactional;
+        }
+
+        /**
+         * Taken by the shard before running the posting, or by its caller to withdraw it.
+         *
+         * @return whether the caller got it first
+         */
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void apply() {
+            try {
+                result.complete(transactional ? transactionTemplate.execute(status -> run()) : run());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void stage() {
+            try {
+                value = run();
+                rejection = null;
+            } catch (ApiException e) {
+                rejection = e;
+            }
+        }
+
+        private T run() {
+            if (timings == null) {
+                return work.get();
+            }
+            final RequestTimings previous = RequestTimings.bind(timings);
+            try {
+                if (!started) {
+                    // A posting retried alone after a failed group commit only waited once.
+                    RequestTimings.stop(RequestTimings.Phase.LOCK, submitted);
+                    started = true;
+                }
+                return work.get();
+            } finally {
+                RequestTimings.restore(previous);
+            }
+        }
+
+        private void publish() {
+            if (rejection != null) {
+                result.completeExceptionally(rejection);
+            } else {
+                result.complete(value);
+            }
+        }
+    }
+
+    private final class Shard extends Thread {
+        private final BlockingQueue<Posting<?>> queue;
+
+        private Shard(int index, int capacity) {
+            super("ledger-shard-" + index);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final List<Posting<?>> group = new ArrayList<>(groupMaxItems);
+            while (!isInterrupted()) {
+                try {
+                    group.add(queue.take());
+                    collect(group);
+                } catch (InterruptedException e) {
+                    break;
+                } finally {
+                    if (!group.isEmpty()) {
+                        commit(group);
+                        group.clear();
+                    }
+                }
+            }
+            Posting<?> pending;
+            while ((pending = queue.poll()) != null) {
+                if (pending.claim()) {
+                    pending.result.completeExceptionally(new ApiException(ErrorReason.SERVICE_UNAVAILABLE, "The service is shutting down."));
+                }
+            }
+        }
+
+        private void collect(List<Posting<?>> group) throws InterruptedException {
+            queue.drainTo(group, groupMaxItems - group.size());
+            final long deadline = System.nanoTime() + groupWindowNanos;
+            while (group.size() < groupMaxItems) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                final Posting<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+                queue.drainTo(group, groupMaxItems - group.size());
+            }
+        }
+    }
+}
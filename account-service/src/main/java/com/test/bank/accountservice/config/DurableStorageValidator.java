@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.config;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Refuses to start the {@code durable} profile on a database that would not keep committed
+ * work: an in-memory database, or changes written to the file with a delay after commit.
+ */
+@Component
+@Profile("durable")
+@Log4j2
+public class DurableStorageValidator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DurableStorageValidator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void validate() {
+        final String path = jdbcTemplate.queryForObject("call database_path()", String.class);
+        if (path == null) {
+            throw new IllegalStateException("The durable profile needs a file database, spring.datasource.url is in-memory.");
+        }
+        assertSetting("WRITE_DELAY", "0");
+        log.info("Durable storage at {} with a {} KB page cache", path, setting("CACHE_SIZE"));
+    }
+
+    private void assertSetting(String name, String expected) {
+        final String value = setting(name);
+        if (!expected.equalsIgnoreCase(value)) {
+            throw new IllegalStateException(String.format(
+                    "The durable profile needs %s=%s in spring.datasource.url, the database runs with %s.",
+                    name, expected, value));
+        }
+    }
+
+    private String setting(String name) {
+        return jdbcTemplate.query("select value from information_schema.settings where name = ?",
+                resultSet -> resultSet.next() ? resultSet.getString(1) : null, name);
+    }
+}
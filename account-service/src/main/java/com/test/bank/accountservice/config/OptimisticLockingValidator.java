@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Refuses to start the {@code OPTIMISTIC} concurrency mode on H2's MVStore engine. An
+ * MVStore update that waited for a row locked by another transaction does not re-check
+ * its {@code WHERE} clause once the lock is released, so both versioned updates report
+ * one row and one of the changes is lost without a conflict.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.transaction.concurrency-mode", havingValue = "OPTIMISTIC")
+public class OptimisticLockingValidator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OptimisticLockingValidator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void validate() {
+        final String product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"H2".equals(product)) {
+            return;
+        }
+        final String mvStore = jdbcTemplate.query("select value from information_schema.settings where name = 'MV_STORE'",
+                resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        if ("TRUE".equalsIgnoreCase(mvStore)) {
+            throw new IllegalStateException("OPTIMISTIC concurrency loses versioned updates on H2's MVStore, add "
+                    + "MV_STORE=FALSE to spring.datasource.url or use bank.transaction.concurrency-mode=STRIPED.");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.bank.accountservice.timing.ServerTimingFilter;
+import com.test.bank.accountservice.timing.TimedJackson2HttpMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import javax.servlet.DispatcherType;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "bank.server-timing.enabled", havingValue = "true", matchIfMissing = true)
+public class ServerTimingConfig {
+
+    @Bean
+    public FilterRegistrationBean<ServerTimingFilter> serverTimingFilter(
+            @Value("${bank.server-timing.url-pattern:/api/*}") String urlPattern,
+            @Value("${bank.server-timing.excluded-paths:/api/v1/accounts/*/statement}") List<String> excludedPaths,
+            @Value("${bank.server-timing.slow-request-ms:500}") long slowRequestMs,
+            @Value("${bank.server-timing.slow-request-sample-rate:0.1}") double slowRequestSampleRate) {
+        final FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(
+                new ServerTimingFilter(excludedPaths, slowRequestMs, slowRequestSampleRate));
+        registration.addUrlPatterns(urlPattern);
+        // Handlers return CompletableFuture, their bodies are written on the async dispatch.
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        // Right after the actuator request metrics filter, so the total covers nearly the whole request.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+
+    /**
+     * Replaces Spring Boot's JSON converter, so the time spent writing bodies shows up in
+     * the breakdown.
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new TimedJackson2HttpMessageConverter(objectMapper);
+    }
+}
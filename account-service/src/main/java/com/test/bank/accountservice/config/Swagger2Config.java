@@ -15,27 +15,37 @@
  */
 package com.test.bank.accountservice.config;
 
+import com.fasterxml.classmate.TypeResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.ResponseEntity;
 import springfox.documentation.builders.ApiInfoBuilder;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.service.ApiInfo;
 import springfox.documentation.service.Contact;
 import springfox.documentation.spi.DocumentationType;
+import springfox.documentation.schema.WildcardType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+import java.util.concurrent.CompletableFuture;
+
+import static springfox.documentation.schema.AlternateTypeRules.newRule;
+
 @Configuration
 @EnableSwagger2
 public class Swagger2Config {
 
     @Bean
-    public Docket docket() {
+    public Docket docket(TypeResolver typeResolver) {
         return new Docket(DocumentationType.SWAGGER_2).select()
                 .apis(RequestHandlerSelectors.basePackage("com.test.bank.accountservice.controller"))
                 .paths(PathSelectors.regex("/.*"))
-                .build().apiInfo(apiInfo());
+                .build().apiInfo(apiInfo())
+                .alternateTypeRules(newRule(
+                        typeResolver.resolve(CompletableFuture.class, typeResolver.resolve(ResponseEntity.class, WildcardType.class)),
+                        typeResolver.resolve(WildcardType.class)));
     }
 
     private ApiInfo apiInfo() {
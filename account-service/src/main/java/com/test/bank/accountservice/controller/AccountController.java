@@ -16,19 +16,38 @@
 package com.test.bank.accountservice.controller;
 
 import com.test.bank.accountservice.dto.*;
-import com.test.bank.accountservice.service.AccountService;
+import com.test.bank.accountservice.enums.StatementFormat;
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.service.AsyncAccountService;
+import com.test.bank.accountservice.service.StatementExportService;
 import io.swagger.annotations.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
 
 @Api(value="Account Service", description="Operations to allow to maintain a personal checking account")
 @RestController
 @RequestMapping("/api")
 public class AccountController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    @Autowired
+    private AsyncAccountService accountService;
+
     @Autowired
-    private AccountService accountService;
+    private StatementExportService statementExportService;
+
+    @Value("${bank.statement.timeout-ms:600000}")
+    private long statementTimeoutMs;
 
     @ApiOperation(value = "Allows to find an account by number and pin", response = AccountDTO.class)
     @ApiResponses(value = {
@@ -36,9 +55,9 @@ public class AccountController {
         @ApiResponse(code = 400, message = "The account you were trying to reach is not found")
     })
     @GetMapping("/v1/accounts")
-    public ResponseEntity<AccountDTO> findAccount(@ApiParam(value = "The account number", required = true) @RequestParam String accountNumber,
-                                                  @ApiParam(value = "The account pin number", required = true) @RequestParam String pin){
-        return ResponseEntity.ok(accountService.searchAccount(accountNumber, pin));
+    public CompletableFuture<ResponseEntity<AccountDTO>> findAccount(@ApiParam(value = "The account number", required = true) @RequestParam String accountNumber,
+                                                                     @ApiParam(value = "The account pin number", required = true) @RequestParam String pin){
+        return accountService.searchAccount(accountNumber, pin).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Get the account details by Id", response = AccountDetailDTO.class)
@@ -47,18 +66,67 @@ public class AccountController {
             @ApiResponse(code = 400, message = "The account you were trying to reach is not found")
     })
     @GetMapping("/v1/accounts/{accountId}")
-    public ResponseEntity<AccountDetailDTO> findAccount(
+    public CompletableFuture<ResponseEntity<AccountDetailDTO>> findAccount(
             @ApiParam(value = "Account id from which account details will be fetch", required = true)
             @PathVariable("accountId") Long id){
-        return ResponseEntity.ok(accountService.findAccount(id));
+        return accountService.findAccount(id).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Get the current balance of an account", response = AccountBalanceDTO.class)
     @GetMapping("/v1/accounts/{accountId}/balance")
-    public ResponseEntity<AccountBalanceDTO> getCurrentBalance(
+    public CompletableFuture<ResponseEntity<AccountBalanceDTO>> getCurrentBalance(
             @ApiParam(value = "Account id from which account balance will be fetch", required = true)
             @PathVariable("accountId") Long accountId){
-        return ResponseEntity.ok(accountService.getCurrentBalance(accountId));
+        return accountService.getCurrentBalance(accountId).thenApply(ResponseEntity::ok);
+    }
+
+    @ApiOperation(value = "Get a page of the transaction history of an account, newest first", response = TransactionPageDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Transactions Successfully Found"),
+            @ApiResponse(code = 400, message = "The account does not exist or the page request is not valid")
+    })
+    @GetMapping("/v1/accounts/{accountId}/transactions")
+    public CompletableFuture<ResponseEntity<TransactionPageDTO>> findTransactions(
+            @ApiParam(value = "Account id from which transactions will be fetch", required = true)
+            @PathVariable("accountId") Long accountId,
+            @ApiParam(value = "Only transactions of this type")
+            @RequestParam(required = false) TransactionType type,
+            @ApiParam(value = "Only transactions on or after this date time, e.g. 2019-10-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @ApiParam(value = "Only transactions before this date time, e.g. 2019-11-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @ApiParam(value = "The nextCursor of the previous page, omit it for the first page")
+            @RequestParam(required = false) String cursor,
+            @ApiParam(value = "Maximum number of transactions in the page")
+            @RequestParam(required = false) Integer limit){
+        return accountService.findTransactions(accountId, type, from, to, cursor, limit).thenApply(ResponseEntity::ok);
+    }
+
+    @ApiOperation(value = "Export the full transaction history of an account, oldest first")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Statement streamed"),
+            @ApiResponse(code = 400, message = "The account you were trying to reach is not found"),
+            @ApiResponse(code = 503, message = "Too many exports in progress")
+    })
+    @GetMapping("/v1/accounts/{accountId}/statement")
+    public ResponseEntity<StreamingResponseBody> exportStatement(
+            @ApiParam(value = "Account id from which the statement will be exported", required = true)
+            @PathVariable("accountId") Long accountId,
+            @ApiParam(value = "Statement format, NDJSON or CSV")
+            @RequestParam(defaultValue = "NDJSON") StatementFormat format,
+            HttpServletRequest request){
+        statementExportService.assertAccountExists(accountId);
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        String.format("attachment; filename=\"statement-%d.%s\"", accountId, format.getExtension()))
+                .body(outputStream -> {
+                    // Large histories outlive spring.mvc.async.request-timeout, exports get their own limit.
+                    if(request.isAsyncStarted()){
+                        request.getAsyncContext().setTimeout(statementTimeoutMs);
+                    }
+                    statementExportService.export(accountId, format, outputStream);
+                });
     }
 
     @ApiOperation(value = "Open a new account.", response = ResponseDTO.class)
@@ -68,10 +136,10 @@ public class AccountController {
     })
 
     @PostMapping("/v1/accounts")
-    public ResponseEntity<ResponseDTO> openAccount(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> openAccount(
             @ApiParam(value = "Request object with the information to be stored in database", required = true)
             @RequestBody AccountRequestDTO accountRequestDTO){
-        return ResponseEntity.ok(accountService.openAccount(accountRequestDTO));
+        return accountService.openAccount(accountRequestDTO).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Close an existing account.", response = ResponseDTO.class)
@@ -81,10 +149,10 @@ public class AccountController {
     })
 
     @PutMapping("/v1/accounts/{accountId}/close")
-    public ResponseEntity<ResponseDTO> closeAccount(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> closeAccount(
             @ApiParam(value = "The account id", required = true)
             @PathVariable("accountId") Long accountId){
-        return ResponseEntity.ok(accountService.closeAccount(accountId));
+        return accountService.closeAccount(accountId).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Makes a deposit into current account.", response = ResponseDTO.class)
@@ -93,12 +161,30 @@ public class AccountController {
             @ApiResponse(code = 400, message = "A constraint validation failure was fired")
     })
     @PutMapping("/v1/accounts/{accountId}/deposit")
-    public ResponseEntity<ResponseDTO> makeDeposit(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> makeDeposit(
             @ApiParam(value = "The account id", required = true)
             @PathVariable("accountId") Long accountId,
             @ApiParam(value = "The transaction request to be processed", required = true)
-            @RequestBody TransactionRequestDTO transactionRequestDTO){
-        return ResponseEntity.ok(accountService.makeDeposit(accountId, transactionRequestDTO));
+            @RequestBody TransactionRequestDTO transactionRequestDTO,
+            @ApiParam(value = "Unique key to safely retry the request, replays return the original transaction")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        return accountService.makeDeposit(accountId, transactionRequestDTO, idempotencyKey).thenApply(ResponseEntity::ok);
+    }
+
+    @ApiOperation(value = "Transfers money from the current account to another account.", response = ResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Transfer Successfully Processed"),
+            @ApiResponse(code = 400, message = "A constraint validation failure was fired")
+    })
+    @PutMapping("/v1/accounts/{accountId}/transfer")
+    public CompletableFuture<ResponseEntity<ResponseDTO>> transfer(
+            @ApiParam(value = "The account id the money is taken from", required = true)
+            @PathVariable("accountId") Long accountId,
+            @ApiParam(value = "The transfer request to be processed", required = true)
+            @RequestBody TransferRequestDTO transferRequestDTO,
+            @ApiParam(value = "Unique key to safely retry the request, replays return the original transaction")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        return accountService.transfer(accountId, transferRequestDTO, idempotencyKey).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Makes a withdrawal from the current account.", response = ResponseDTO.class)
@@ -107,12 +193,14 @@ public class AccountController {
             @ApiResponse(code = 400, message = "A constraint validation failure was fired")
     })
     @PutMapping("/v1/accounts/{accountId}/withdrawal")
-    public ResponseEntity<ResponseDTO> makeWithdrawal(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> makeWithdrawal(
             @ApiParam(value = "The account id", required = true)
             @PathVariable("accountId") Long accountId,
             @ApiParam(value = "The transaction request to be processed", required = true)
-            @RequestBody TransactionRequestDTO transactionRequestDTO){
-        return ResponseEntity.ok(accountService.makeWithdrawal(accountId, transactionRequestDTO));
+            @RequestBody TransactionRequestDTO transactionRequestDTO,
+            @ApiParam(value = "Unique key to safely retry the request, replays return the original transaction")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        return accountService.makeWithdrawal(accountId, transactionRequestDTO, idempotencyKey).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Makes a debit operation to current account from external source.", response = ResponseDTO.class)
@@ -121,12 +209,14 @@ public class AccountController {
             @ApiResponse(code = 400, message = "A constraint validation failure was fired")
     })
     @PutMapping("/v1/accounts/{accountId}/debit")
-    public ResponseEntity<ResponseDTO> processDebit(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> processDebit(
             @ApiParam(value = "The account id", required = true)
             @PathVariable("accountId") Long accountId,
             @ApiParam(value = "The transaction request to be processed", required = true)
-            @RequestBody TransactionRequestDTO transactionRequestDTO){
-        return ResponseEntity.ok(accountService.processDebit(accountId, transactionRequestDTO));
+            @RequestBody TransactionRequestDTO transactionRequestDTO,
+            @ApiParam(value = "Unique key to safely retry the request, replays return the original transaction")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        return accountService.processDebit(accountId, transactionRequestDTO, idempotencyKey).thenApply(ResponseEntity::ok);
     }
 
     @ApiOperation(value = "Makes an operation with check to current account from external source.", response = ResponseDTO.class)
@@ -135,11 +225,13 @@ public class AccountController {
             @ApiResponse(code = 400, message = "A constraint validation failure was fired")
     })
     @PutMapping("/v1/accounts/{accountId}/check")
-    public ResponseEntity<ResponseDTO> processCheck(
+    public CompletableFuture<ResponseEntity<ResponseDTO>> processCheck(
             @ApiParam(value = "The account id", required = true)
             @PathVariable("accountId") Long accountId,
             @ApiParam(value = "The transaction request to be processed", required = true)
-            @RequestBody TransactionRequestDTO transactionRequestDTO){
-        return ResponseEntity.ok(accountService.processCheck(accountId, transactionRequestDTO));
+            @RequestBody TransactionRequestDTO transactionRequestDTO,
+            @ApiParam(value = "Unique key to safely retry the request, replays return the original transaction")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey){
+        return accountService.processCheck(accountId, transactionRequestDTO, idempotencyKey).thenApply(ResponseEntity::ok);
     }
 }
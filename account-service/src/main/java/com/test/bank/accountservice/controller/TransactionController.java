@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.controller;
+
+import com.test.bank.accountservice.dto.BatchTransactionRequestDTO;
+import com.test.bank.accountservice.dto.BatchTransactionResponseDTO;
+import com.test.bank.accountservice.service.AsyncAccountService;
+import io.swagger.annotations.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
+
+@Api(value="Transaction Service", description="Operations spanning several accounts")
+@RestController
+@RequestMapping("/api")
+public class TransactionController {
+
+    @Autowired
+    private AsyncAccountService accountService;
+
+    @ApiOperation(value = "Process a batch of transactions with one result per item.", response = BatchTransactionResponseDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Batch processed, see per item results"),
+            @ApiResponse(code = 400, message = "The batch is empty or too large")
+    })
+    @PostMapping("/v1/transactions/batch")
+    public CompletableFuture<ResponseEntity<BatchTransactionResponseDTO>> processBatch(
+            @ApiParam(value = "The transactions to be processed", required = true)
+            @RequestBody BatchTransactionRequestDTO batchTransactionRequestDTO){
+        return accountService.processBatch(batchTransactionRequestDTO).thenApply(ResponseEntity::ok);
+    }
+}
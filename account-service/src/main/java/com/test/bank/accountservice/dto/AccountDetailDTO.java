@@ -46,7 +46,7 @@ public class AccountDetailDTO implements Serializable {
     @ApiModelProperty(notes = "The current account balance")
     private BigDecimal currentBalance;
 
-    @ApiModelProperty(notes = "List of the last 5 transactions for current account")
+    @ApiModelProperty(notes = "The most recent transactions for current account, newest first")
     private List<TransactionDetailDTO> lastTransactions;
 
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.dto;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ApiModel(description = "A single transaction inside a batch.")
+public class BatchTransactionItemDTO extends TransactionRequestDTO {
+    private static final long serialVersionUID = -6409123412371651210L;
+
+    @ApiModelProperty(notes = "The account id the transaction is applied to")
+    private Long accountId;
+
+    @ApiModelProperty(notes = "The operation to execute (DEPOSIT, WITHDRAWAL, DEBIT, CHECKS)")
+    private TransactionType operation;
+
+    public BatchTransactionItemDTO(Long accountId, TransactionType operation, BigDecimal amount, String type, String description) {
+        super(amount, type, description);
+        this.accountId = accountId;
+        this.operation = operation;
+    }
+
+}
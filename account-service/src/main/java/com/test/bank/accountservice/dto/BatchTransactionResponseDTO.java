@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@ApiModel(description = "Per transaction results of a batch.")
+public class BatchTransactionResponseDTO implements Serializable {
+    private static final long serialVersionUID = 5153786390872517431L;
+
+    @ApiModelProperty(notes = "Number of transactions processed successfully")
+    private int succeeded;
+
+    @ApiModelProperty(notes = "Number of transactions rejected")
+    private int failed;
+
+    @ApiModelProperty(notes = "One result per requested transaction, in request order")
+    private List<BatchTransactionResultDTO> results;
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@ApiModel(description = "Outcome of a single transaction inside a batch.")
+public class BatchTransactionResultDTO implements Serializable {
+    private static final long serialVersionUID = -1785061371683094826L;
+
+    @ApiModelProperty(notes = "Position of the transaction in the request")
+    private int index;
+
+    @ApiModelProperty(notes = "The account id the transaction was applied to")
+    private Long accountId;
+
+    @ApiModelProperty(notes = "Whether the transaction was processed")
+    private boolean success;
+
+    @ApiModelProperty(notes = "Autogenerated transaction ID when processed")
+    private String transactionId;
+
+    @ApiModelProperty(notes = "The reason the transaction was rejected")
+    private String message;
+
+}
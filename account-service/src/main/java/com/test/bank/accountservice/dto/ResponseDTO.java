@@ -37,4 +37,7 @@ public class ResponseDTO implements Serializable {
 
     @ApiModelProperty(notes = "Autogenerated transaction ID")
     private String transactionId;
+
+    @ApiModelProperty(notes = "Id linking both legs of a transfer")
+    private String transferId;
 }
@@ -28,10 +28,13 @@ public class TransactionDetailDTO implements Serializable {
 
     private static final long serialVersionUID = -2154381290294551470L;
 
+    @ApiModelProperty(notes = "Autogenerated transaction ID")
+    private String transactionId;
+
     @ApiModelProperty(notes = "The signed amount of the transaction")
     private BigDecimal amount;
 
-    @ApiModelProperty(notes = "The transaction type (deposit, withdrawal, debit, checks)")
+    @ApiModelProperty(notes = "The transaction type (deposit, withdrawal, debit, checks, transfer)")
     private String transactionType;
 
     @ApiModelProperty(notes = "A description for this transaction")
@@ -40,4 +43,7 @@ public class TransactionDetailDTO implements Serializable {
     @ApiModelProperty(notes = "A date time for transaction")
     private String transactionDate;
 
+    @ApiModelProperty(notes = "Id linking both legs of a transfer, if the transaction is part of one")
+    private String transferId;
+
 }
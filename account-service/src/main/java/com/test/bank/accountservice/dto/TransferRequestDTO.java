@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@ApiModel(description = "Information to move money between two accounts.")
+public class TransferRequestDTO implements Serializable {
+    private static final long serialVersionUID = 6917532048862271538L;
+
+    @ApiModelProperty(notes = "The account id receiving the money")
+    private Long targetAccountId;
+
+    @ApiModelProperty(notes = "Positive amount to transfer")
+    private BigDecimal amount;
+
+    @ApiModelProperty(notes = "A description for both legs of the transfer")
+    private String description;
+
+    public TransferRequestDTO(Long targetAccountId, BigDecimal amount, String description) {
+        this.targetAccountId = targetAccountId;
+        this.amount = amount;
+        this.description = description;
+    }
+}
@@ -19,5 +19,6 @@ public enum TransactionType {
     DEPOSIT,
     WITHDRAWAL,
     DEBIT,
-    CHECKS;
+    CHECKS,
+    TRANSFER;
 }
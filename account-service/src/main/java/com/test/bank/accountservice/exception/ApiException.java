@@ -17,7 +17,18 @@ package com.test.bank.accountservice.exception;
 
 public class ApiException extends RuntimeException {
 
+    private final ErrorReason reason;
+
     public ApiException(String message){
+        this(ErrorReason.INVALID_REQUEST, message);
+    }
+
+    public ApiException(ErrorReason reason, String message){
         super(message);
+        this.reason = reason;
+    }
+
+    public ErrorReason getReason() {
+        return reason;
     }
 }
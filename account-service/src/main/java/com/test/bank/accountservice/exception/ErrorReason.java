@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.exception;
+
+/**
+ * Why an {@link ApiException} rejected a request. The set is closed on purpose: it is
+ * used as a metric tag, so it has to stay small and must never carry request values.
+ */
+public enum ErrorReason {
+    INVALID_REQUEST,
+    INVALID_AMOUNT,
+    AMOUNT_OVERFLOW,
+    INVALID_TRANSACTION_TYPE,
+    INVALID_PIN,
+    MISSING_CREDENTIALS,
+    INVALID_QUERY,
+    INVALID_BATCH,
+    INVALID_TRANSFER,
+    INVALID_IDEMPOTENCY_KEY,
+    ACCOUNT_NOT_FOUND,
+    ACCOUNT_OVERDRAWN,
+    INSUFFICIENT_FUNDS,
+    CONCURRENT_UPDATE,
+    SERVICE_UNAVAILABLE,
+    TIMEOUT;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
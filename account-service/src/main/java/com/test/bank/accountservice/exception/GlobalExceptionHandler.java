@@ -17,6 +17,7 @@ package com.test.bank.accountservice.exception;
 
 import com.test.bank.accountservice.dto.MessageResponseDTO;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -28,19 +29,59 @@ import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 @Log4j2
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
+    @ExceptionHandler(ConcurrentUpdateException.class)
+    public ResponseEntity<MessageResponseDTO> handleConcurrentUpdate(ConcurrentUpdateException exception) {
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(new MessageResponseDTO(exception.getMessage()));
+    }
+
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<MessageResponseDTO> handleConcurrencyFailure(ConcurrencyFailureException exception) {
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(new MessageResponseDTO("The account is being updated concurrently, please retry the operation."));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<MessageResponseDTO> handleRejectedExecution(RejectedExecutionException exception) {
+        log.warn(exception.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new MessageResponseDTO("The service is too busy to accept the operation, please retry later."));
+    }
+
     @ExceptionHandler(ApiException.class)
     public ResponseEntity<MessageResponseDTO> handleApiException(ApiException exception) {
         log.error(exception.getMessage(), exception);
         return ResponseEntity
-                .status(HttpStatus.BAD_REQUEST)
+                .status(statusOf(exception.getReason()))
                 .body(new MessageResponseDTO(exception.getMessage()));
     }
 
+    /**
+     * Rejections are answered as bad requests, unless the service itself could not take the
+     * operation or finish it in time.
+     */
+    private static HttpStatus statusOf(ErrorReason reason) {
+        switch (reason) {
+            case SERVICE_UNAVAILABLE:
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            case TIMEOUT:
+                return HttpStatus.GATEWAY_TIMEOUT;
+            default:
+                return HttpStatus.BAD_REQUEST;
+        }
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
     public ResponseEntity<Object> handleConstraintViolation(
             ConstraintViolationException ex) {
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.journal;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import lombok.Value;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Balance, status and version of accounts as of a journal sequence.
+ * <p>
+ * The file holds a header (magic, format version, sequence), 25 bytes per account in
+ * ascending id order (id, balance in minor units, version, status), the account count and
+ * a CRC32 of everything before it. Sorted files let a new snapshot be written by merging
+ * the previous file with the accounts changed since, without loading it.
+ */
+public class BalanceSnapshot {
+
+    private static final int MAGIC = 0x42534e50;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int ACCOUNT_BYTES = 25;
+    private static final int TRAILER_BYTES = 12;
+    private static final AccountStatus[] STATUSES = AccountStatus.values();
+
+    private final NavigableMap<Long, AccountState> accounts = new TreeMap<>();
+    private long sequence;
+
+    public BalanceSnapshot(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Keeps the given state unless a newer version of the account is already held. Records
+     * of one transaction share the account version, the last one applied wins.
+     */
+    public void put(long accountId, long balanceMinor, long version, AccountStatus status) {
+        final AccountState current = accounts.get(accountId);
+        if (current == null || current.getVersion() <= version) {
+            accounts.put(accountId, new AccountState(balanceMinor, version, status));
+        }
+    }
+
+    /**
+     * Applies a journal record appended after the snapshot was taken.
+     */
+    public void apply(JournalRecord record) {
+        put(record.getAccountId(), record.getBalanceMinor(), record.getVersion(), record.getStatus());
+        sequence = Math.max(sequence, record.getSequence());
+    }
+
+    public AccountState get(long accountId) {
+        return accounts.get(accountId);
+    }
+
+    public void forEach(BiConsumer<Long, AccountState> consumer) {
+        accounts.forEach(consumer);
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void writeTo(Path path) throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(path, sequence)) {
+            for (Map.Entry<Long, AccountState> entry : accounts.entrySet()) {
+                writer.write(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the accounts of the previous snapshot file with the ones held here applied over
+     * them, reading the previous file once in order.
+     *
+     * @return the number of accounts written
+     */
+    public long writeMerged(Path previous, Path path) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(previous);
+             SnapshotWriter writer = new SnapshotWriter(path, Math.max(sequence, reader.sequence))) {
+            final Iterator<Map.Entry<Long, AccountState>> changes = accounts.entrySet().iterator();
+            Map.Entry<Long, AccountState> change = changes.hasNext() ? changes.next() : null;
+            while (reader.next()) {
+                while (change != null && change.getKey() < reader.accountId) {
+                    writer.write(change.getKey(), change.getValue());
+                    change = changes.hasNext() ? changes.next() : null;
+                }
+                if (change != null && change.getKey() == reader.accountId) {
+                    writer.write(reader.accountId, change.getValue().getVersion() >= reader.state.getVersion()
+                            ? change.getValue() : reader.state);
+                    change = changes.hasNext() ? changes.next() : null;
+                } else {
+                    writer.write(reader.accountId, reader.state);
+                }
+            }
+            while (change != null) {
+                writer.write(change.getKey(), change.getValue());
+                change = changes.hasNext() ? changes.next() : null;
+            }
+            return writer.count;
+        }
+    }
+
+    public static BalanceSnapshot readFrom(Path path) throws IOException {
+        try (SnapshotReader reader = new SnapshotReader(path)) {
+            final BalanceSnapshot snapshot = new BalanceSnapshot(reader.sequence);
+            while (reader.next()) {
+                snapshot.accounts.put(reader.accountId, reader.state);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the sequence in the header of the file, which is not otherwise checked
+     */
+    public static long readSequence(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a balance snapshot: " + path);
+            }
+            return input.readLong();
+        }
+    }
+
+    @Value
+    public static class AccountState {
+        private final long balanceMinor;
+        private final long version;
+        private final AccountStatus status;
+    }
+
+    private static final class SnapshotWriter implements Closeable {
+        private final CheckedOutputStream checked;
+        private final DataOutputStream output;
+        private long count;
+
+        private SnapshotWriter(Path path, long sequence) throws IOException {
+            checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), new CRC32());
+            output = new DataOutputStream(checked);
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(sequence);
+        }
+
+        private void write(long accountId, AccountState state) throws IOException {
+            output.writeLong(accountId);
+            output.writeLong(state.getBalanceMinor());
+            output.writeLong(state.getVersion());
+            output.writeByte(state.getStatus().ordinal());
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                output.writeLong(count);
+                output.writeInt((int) checked.getChecksum().getValue());
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the accounts of a file in order. The count is taken from the file size and the
+     * trailer is checked once the last account has been read.
+     */
+    private static final class SnapshotReader implements Closeable {
+        private final Path path;
+        private final CheckedInputStream checked;
+        private final DataInputStream input;
+        private final long sequence;
+        private final long count;
+        private long read;
+        private long accountId;
+        private AccountState state;
+
+        private SnapshotReader(Path path) throws IOException {
+            this.path = path;
+            final long accountBytes = Files.size(path) - HEADER_BYTES - TRAILER_BYTES;
+            checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16), new CRC32());
+            input = new DataInputStream(checked);
+            if (accountBytes < 0 || accountBytes % ACCOUNT_BYTES != 0
+                    || input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                input.close();
+                throw new IOException("Not a balance snapshot: " + path);
+            }
+            sequence = input.readLong();
+            count = accountBytes / ACCOUNT_BYTES;
+        }
+
+        private boolean next() throws IOException {
+            if (read == count) {
+                final long stored = input.readLong();
+                final int expected = (int) checked.getChecksum().getValue();
+                if (stored != count || input.readInt() != expected) {
+                    throw new IOException("The checksum of " + path + " does not match");
+                }
+                return false;
+            }
+            accountId = input.readLong();
+            final long balanceMinor = input.readLong();
+            final long version = input.readLong();
+            final int status = input.readUnsignedByte();
+            if (status >= STATUSES.length) {
+                throw new IOException("Unknown account status " + status + " in " + path);
+            }
+            state = new AccountState(balanceMinor, version, STATUSES[status]);
+            read++;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
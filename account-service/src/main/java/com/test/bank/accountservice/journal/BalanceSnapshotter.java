@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.journal;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes {@link BalanceSnapshot balance snapshots} next to the journal.
+ * <p>
+ * A new snapshot is the latest one with the journal records appended since applied to it,
+ * so taking one reads files only: postings keep running and the result is consistent as
+ * of the last record it applied. Only the accounts changed since are held in memory; the
+ * latest file is merged with them as it is copied. The first snapshot is taken from the database by
+ * {@link JournalRecovery}. Only the newest snapshots are kept, and the journal segments
+ * older than the oldest of them are deleted: every snapshot kept can still be brought up
+ * to date if a newer one turns out to be unreadable.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.journal.enabled", havingValue = "true")
+@Log4j2
+public class BalanceSnapshotter {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final TransactionJournal transactionJournal;
+    private final Path directory;
+    private final int retained;
+
+    public BalanceSnapshotter(TransactionJournal transactionJournal,
+                              @Value("${bank.journal.dir:./data/journal}") String directory,
+                              @Value("${bank.journal.snapshot.retained:2}") int retained) {
+        this.transactionJournal = transactionJournal;
+        this.directory = Paths.get(directory);
+        this.retained = Math.max(1, retained);
+    }
+
+    /**
+     * @return the newest readable snapshot, or {@code null} when there is none
+     */
+    public BalanceSnapshot loadLatest() {
+        final List<Path> paths = snapshotPaths();
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            try {
+                return BalanceSnapshot.readFrom(paths.get(i));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable balance snapshot {}", paths.get(i), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Folds the journal records appended since the latest snapshot into a new one.
+     * Also run on shutdown, so a clean restart has no journal tail to replay.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${bank.journal.snapshot.interval-ms:300000}",
+            initialDelayString = "${bank.journal.snapshot.interval-ms:300000}")
+    public synchronized void takeSnapshot() {
+        final List<Path> paths = snapshotPaths();
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            final Path previous = paths.get(i);
+            final long start = System.nanoTime();
+            try {
+                final BalanceSnapshot changes = new BalanceSnapshot(BalanceSnapshot.readSequence(previous));
+                final long from = changes.getSequence();
+                if (transactionJournal.replay(from, changes::apply) > from) {
+                    final long[] accounts = new long[1];
+                    writeFile(changes.getSequence(), path -> accounts[0] = changes.writeMerged(previous, path));
+                    log.info("Balance snapshot of {} accounts, {} changed, at sequence {} took {} ms", accounts[0],
+                            changes.size(), changes.getSequence(), (System.nanoTime() - start) / 1_000_000);
+                }
+                return;
+            } catch (IOException e) {
+                log.warn("Skipping unreadable balance snapshot {}", previous, e);
+            }
+        }
+    }
+
+    public synchronized void write(BalanceSnapshot snapshot) {
+        try {
+            writeFile(snapshot.getSequence(), snapshot::writeTo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The balance snapshot at sequence " + snapshot.getSequence() + " can not be written", e);
+        }
+    }
+
+    /**
+     * Writes the snapshot file of the given sequence through a temporary file, then deletes
+     * the snapshots and journal segments no longer needed.
+     */
+    private void writeFile(long sequence, SnapshotContent content) throws IOException {
+        final Path path = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+        final Path temporary = directory.resolve(path.getFileName() + ".tmp");
+        try {
+            content.writeTo(temporary);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        final List<Path> paths = snapshotPaths();
+        final List<Path> old = paths.subList(0, Math.max(0, paths.size() - retained));
+        for (Path expired : old) {
+            try {
+                Files.delete(expired);
+            } catch (IOException e) {
+                log.warn("Old balance snapshot {} could not be deleted", expired, e);
+            }
+        }
+        final int pruned = transactionJournal.prune(sequenceOf(paths.get(old.size())));
+        if (pruned > 0) {
+            log.info("Deleted {} journal segments covered by the balance snapshots", pruned);
+        }
+    }
+
+    private interface SnapshotContent {
+        void writeTo(Path path) throws IOException;
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        final String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    private List<Path> snapshotPaths() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                final String name = path.getFileName().toString();
+                return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+            }).sorted(Comparator.comparing(Path::getFileName)).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("The balance snapshots can not be listed in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.journal;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.TransactionType;
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * A posted transaction as stored in the journal, with the balance, status and version of
+ * the account right after it. Opening and closing an account are journaled as records
+ * without a transaction, whose id and amount are zero. Every record takes {@link #SIZE} bytes:
+ * <pre>
+ *  0 sequence        8 transaction id   16 account id     24 amount (minor units)
+ * 32 balance after  40 account version  48 epoch millis   56 type (-1 for none)
+ * 57 account status 58-59 unused        60 CRC32 of bytes 0-59
+ * </pre>
+ */
+@Value
+public class JournalRecord {
+    public static final int SIZE = 64;
+    private static final int CRC_OFFSET = 60;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final AccountStatus[] STATUSES = AccountStatus.values();
+
+    private final long sequence;
+    private final long transactionId;
+    private final long accountId;
+    private final TransactionType transactionType;
+    private final AccountStatus status;
+    private final long amountMinor;
+    private final long balanceMinor;
+    private final long version;
+    private final long timestamp;
+
+    JournalRecord withSequence(long sequence) {
+        return new JournalRecord(sequence, transactionId, accountId, transactionType, status, amountMinor,
+                balanceMinor, version, timestamp);
+    }
+
+    void writeTo(ByteBuffer buffer, int offset) {
+        final ByteBuffer bytes = ByteBuffer.allocate(SIZE);
+        bytes.putLong(0, sequence)
+                .putLong(8, transactionId)
+                .putLong(16, accountId)
+                .putLong(24, amountMinor)
+                .putLong(32, balanceMinor)
+                .putLong(40, version)
+                .putLong(48, timestamp)
+                .put(56, (byte) (transactionType != null ? transactionType.ordinal() : -1))
+                .put(57, (byte) status.ordinal());
+        bytes.putInt(CRC_OFFSET, checksum(bytes, 0));
+
+        final ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        target.put(bytes);
+    }
+
+    /**
+     * @return the record stored at the offset, or {@code null} when the slot is empty or
+     * holds a partially written record
+     */
+    static JournalRecord readFrom(ByteBuffer buffer, int offset) {
+        final long sequence = buffer.getLong(offset);
+        if (sequence <= 0 || buffer.getInt(offset + CRC_OFFSET) != checksum(buffer, offset)) {
+            return null;
+        }
+        final int type = buffer.get(offset + 56);
+        final int status = buffer.get(offset + 57);
+        if (type < -1 || type >= TYPES.length || status < 0 || status >= STATUSES.length) {
+            return null;
+        }
+        return new JournalRecord(sequence,
+                buffer.getLong(offset + 8),
+                buffer.getLong(offset + 16),
+                type >= 0 ? TYPES[type] : null,
+                STATUSES[status],
+                buffer.getLong(offset + 24),
+                buffer.getLong(offset + 32),
+                buffer.getLong(offset + 40),
+                buffer.getLong(offset + 48));
+    }
+
+    static boolean isEmpty(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < SIZE; i += Long.BYTES) {
+            if (buffer.getLong(offset + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset) {
+        final ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(offset + CRC_OFFSET).position(offset);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.journal;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.service.BalanceStore;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds the balances of every account on startup and checks the database against the
+ * journal.
+ * <p>
+ * The latest {@link BalanceSnapshot} is loaded and the journal records appended after it
+ * are applied, so restarting reads the snapshot and the journal tail, not the ledger.
+ * After a clean shutdown the result is trusted when the account count and the sum of the
+ * account versions match the database. Otherwise, and on the first start with a journal,
+ * the accounts are read from the database, which stays the system of record: an account
+ * stored with a newer version only lost the unsynced tail of the journal, while an account
+ * missing or stored behind the journal means committed changes were lost by the database,
+ * and by default stops the startup.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.journal.enabled", havingValue = "true")
+@Log4j2
+public class JournalRecovery {
+
+    private static final int ACCOUNTS_PER_QUERY = 1000;
+
+    private final TransactionJournal transactionJournal;
+    private final BalanceSnapshotter balanceSnapshotter;
+    private final JdbcTemplate jdbcTemplate;
+    private final BalanceStore balanceStore;
+    private final boolean failOnDivergence;
+
+    public JournalRecovery(TransactionJournal transactionJournal,
+                           BalanceSnapshotter balanceSnapshotter,
+                           JdbcTemplate jdbcTemplate,
+                           BalanceStore balanceStore,
+                           @Value("${bank.journal.fail-on-divergence:true}") boolean failOnDivergence) {
+        this.transactionJournal = transactionJournal;
+        this.balanceSnapshotter = balanceSnapshotter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.balanceStore = balanceStore;
+        this.failOnDivergence = failOnDivergence;
+    }
+
+    @PostConstruct
+    public void recover() {
+        final long start = System.nanoTime();
+        final BalanceSnapshot latest = balanceSnapshotter.loadLatest();
+        BalanceSnapshot snapshot = latest;
+        String source = "database";
+        if (latest != null) {
+            final long snapshotSequence = latest.getSequence();
+            transactionJournal.replay(snapshotSequence, latest::apply);
+            source = String.format("snapshot at sequence %d and the journal up to %d", snapshotSequence, latest.getSequence());
+        } else {
+            // Without a snapshot only the records after the checkpoint, and still kept, can be checked.
+            snapshot = new BalanceSnapshot(Math.max(transactionJournal.getCheckpoint(),
+                    transactionJournal.getFirstSequence() - 1));
+            transactionJournal.replay(snapshot.getSequence(), snapshot::apply);
+        }
+
+        if (latest == null || !transactionJournal.wasClosedCleanly() || !matchesDatabase(latest)) {
+            final BalanceSnapshot stored = readAccounts();
+            assertNotBehind(snapshot, stored);
+            balanceSnapshotter.write(stored);
+            snapshot = stored;
+            source = "database";
+        }
+
+        snapshot.forEach((accountId, state) -> balanceStore.load(accountId, state.getBalanceMinor(),
+                state.getVersion(), state.getStatus(), balanceStore.generation(accountId)));
+        transactionJournal.checkpoint();
+        log.info("Loaded the balances of {} accounts from the {} in {} ms", snapshot.size(), source,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private boolean matchesDatabase(BalanceSnapshot snapshot) {
+        final long[] versions = new long[1];
+        snapshot.forEach((accountId, state) -> versions[0] += state.getVersion());
+        final boolean matches = jdbcTemplate.queryForObject("select count(*), coalesce(sum(version), 0) from account",
+                (resultSet, row) -> resultSet.getLong(1) == snapshot.size() && resultSet.getLong(2) == versions[0]);
+        if (!matches) {
+            log.warn("The accounts stored do not match the balance snapshot, reading them from the database");
+        }
+        return matches;
+    }
+
+    /**
+     * Reads every account in id order, a chunk per query. Called before the service takes
+     * requests, so the result is the state as of the last appended journal record.
+     */
+    private BalanceSnapshot readAccounts() {
+        final BalanceSnapshot stored = new BalanceSnapshot(transactionJournal.getAppendedSequence());
+        final long[] lastId = {0};
+        int read;
+        do {
+            final int before = stored.size();
+            jdbcTemplate.query("select id, balance_minor, version, status from account where id > ? order by id limit ?",
+                    resultSet -> {
+                        lastId[0] = resultSet.getLong(1);
+                        stored.put(lastId[0], resultSet.getLong(2), resultSet.getLong(3),
+                                AccountStatus.valueOf(resultSet.getString(4)));
+                    }, lastId[0], ACCOUNTS_PER_QUERY);
+            read = stored.size() - before;
+        } while (read == ACCOUNTS_PER_QUERY);
+        return stored;
+    }
+
+    private void assertNotBehind(BalanceSnapshot journaled, BalanceSnapshot stored) {
+        final List<Long> divergent = new ArrayList<>();
+        journaled.forEach((accountId, state) -> {
+            final BalanceSnapshot.AccountState account = stored.get(accountId);
+            if (account == null || account.getVersion() < state.getVersion()
+                    || (account.getVersion() == state.getVersion() && account.getBalanceMinor() != state.getBalanceMinor())) {
+                divergent.add(accountId);
+            }
+        });
+        if (divergent.isEmpty()) {
+            return;
+        }
+        final String message = String.format("%d accounts are missing or behind the transaction journal, first ones: %s",
+                divergent.size(), divergent.subList(0, Math.min(10, divergent.size())));
+        if (failOnDivergence) {
+            throw new IllegalStateException(message + ". Set bank.journal.fail-on-divergence=false to start anyway.");
+        }
+        log.error(message);
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.journal;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.model.AccountTransaction;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of posted transactions, kept in memory-mapped segment files of
+ * fixed size {@link JournalRecord records}.
+ * <p>
+ * Records are appended once the database transaction that posted them has committed, so
+ * the journal may trail the ledger by its unsynced tail but never leads it. A background
+ * thread forces the mapped segment to disk every sync interval, and right away while a
+ * thread waits in {@link #awaitDurable(long)}. Postings never wait for it: the database
+ * commit is what makes them durable, and the journal is an audit and replay log that
+ * speeds up recovery. Segments covered by a balance snapshot are pruned.
+ * <p>
+ * The checkpoint file holds the sequence up to which the journal is known to match the
+ * database, and a marker file tells whether the last shutdown journaled every committed
+ * change; {@link JournalRecovery} relies on both on startup.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.journal.enabled", havingValue = "true")
+@Log4j2
+public class TransactionJournal implements MeterBinder {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CLEAN_MARKER_FILE = "clean";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long syncIntervalNanos;
+    private final Thread syncer;
+    private final boolean closedCleanly;
+
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder syncNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private Segment segment;
+    private long appendedSequence;
+    private long durableSequence;
+    private int waiters;
+    private boolean closed;
+
+    public TransactionJournal(@Value("${bank.journal.dir:./data/journal}") String directory,
+                              @Value("${bank.journal.segment-records:1048576}") int segmentRecords,
+                              @Value("${bank.journal.sync-interval-ms:10}") long syncIntervalMs) {
+        this.directory = Paths.get(directory);
+        this.segmentRecords = segmentRecords;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+        try {
+            Files.createDirectories(this.directory);
+            this.closedCleanly = Files.deleteIfExists(this.directory.resolve(CLEAN_MARKER_FILE));
+            this.segment = openLastSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The transaction journal can not be opened at " + directory, e);
+        }
+        this.appendedSequence = segment.firstSequence + segment.count - 1;
+        this.durableSequence = appendedSequence;
+
+        this.syncer = new Thread(this::syncLoop, "journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        log.info("Opened transaction journal at {} on sequence {}", this.directory, appendedSequence);
+    }
+
+    /**
+     * Journals a posting with the balance the account has right now. Inside a transaction
+     * the record is appended after commit, with the version the account was committed with.
+     */
+    public void record(AccountTransaction transaction, Account account) {
+        final long balanceMinor = account.getBalanceMinor();
+        final AccountStatus status = account.getStatus();
+        journal(() -> new JournalRecord(0, transaction.getId(), account.getId(), transaction.getTransactionType(),
+                status, transaction.getAmountMinor(), balanceMinor, account.getVersion(),
+                transaction.getTransactionDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+    }
+
+    /**
+     * Journals an account being opened or closed, the same way as a posting.
+     */
+    public void recordStatus(Account account) {
+        final long balanceMinor = account.getBalanceMinor();
+        final AccountStatus status = account.getStatus();
+        journal(() -> new JournalRecord(0, 0, account.getId(), null, status, 0, balanceMinor,
+                account.getVersion(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Appends the record at the next sequence.
+     *
+     * @return the sequence of the record
+     */
+    public long append(JournalRecord record) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The transaction journal is closed");
+            }
+            if (segment.count == segment.capacity) {
+                roll();
+            }
+            final long sequence = appendedSequence + 1;
+            record.withSequence(sequence).writeTo(segment.buffer, segment.count * JournalRecord.SIZE);
+            segment.count++;
+            appendedSequence = sequence;
+            return sequence;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence is on disk.
+     */
+    public void awaitDurable(long sequence) {
+        synchronized (this) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            waiters++;
+            notifyAll();
+            try {
+                while (durableSequence < sequence && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    /**
+     * Replays the records after the given sequence in order.
+     *
+     * @return the sequence of the last record replayed, or {@code afterSequence} when there
+     * were none
+     */
+    public long replay(long afterSequence, Consumer<JournalRecord> consumer) {
+        final long lastSequence;
+        synchronized (this) {
+            lastSequence = appendedSequence;
+        }
+        long replayed = afterSequence;
+        try {
+            final List<Path> paths = segmentPaths();
+            for (int i = 0; i < paths.size() && replayed < lastSequence; i++) {
+                if (i + 1 < paths.size() && firstSequence(paths.get(i + 1)) <= replayed + 1) {
+                    continue;
+                }
+                final long first = firstSequence(paths.get(i));
+                if (first > replayed + 1) {
+                    throw new IllegalStateException(String.format(
+                            "Journal records %d to %d were pruned", replayed + 1, first - 1));
+                }
+                final ByteBuffer buffer = map(paths.get(i), FileChannel.MapMode.READ_ONLY, 0);
+                for (int offset = 0; offset < buffer.capacity() && replayed < lastSequence; offset += JournalRecord.SIZE) {
+                    final long expected = first + offset / JournalRecord.SIZE;
+                    if (expected <= replayed) {
+                        continue;
+                    }
+                    final JournalRecord record = JournalRecord.readFrom(buffer, offset);
+                    if (record == null || record.getSequence() != expected) {
+                        throw new IllegalStateException(String.format(
+                                "Journal record %d in %s is missing or corrupt", expected, paths.get(i)));
+                    }
+                    consumer.accept(record);
+                    replayed = expected;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("The transaction journal can not be read", e);
+        }
+        return replayed;
+    }
+
+    /**
+     * Deletes the segments holding only records up to the given sequence, once a balance
+     * snapshot covers them. The segment being appended to is always kept.
+     *
+     * @return the number of segments deleted
+     */
+    public int prune(long sequence) {
+        int deleted = 0;
+        try {
+            final List<Path> paths = segmentPaths();
+            for (int i = 0; i + 1 < paths.size() && firstSequence(paths.get(i + 1)) <= sequence + 1; i++) {
+                Files.delete(paths.get(i));
+                deleted++;
+            }
+        } catch (IOException e) {
+            log.warn("Journal segments up to sequence {} could not be pruned", sequence, e);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the sequence of the oldest record kept, or the next one when there is none
+     */
+    public long getFirstSequence() {
+        try {
+            final List<Path> paths = segmentPaths();
+            return paths.isEmpty() ? getAppendedSequence() + 1 : firstSequence(paths.get(0));
+        } catch (IOException e) {
+            throw new UncheckedIOException("The transaction journal can not be read", e);
+        }
+    }
+
+    public long getCheckpoint() {
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(path)).getLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The journal checkpoint can not be read", e);
+        }
+    }
+
+    /**
+     * Records every durable sequence as matching the database. The records it covers were
+     * appended after their transactions committed, so the database already holds them.
+     */
+    @Scheduled(fixedDelayString = "${bank.journal.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        final long sequence;
+        synchronized (this) {
+            sequence = durableSequence;
+        }
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        final Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write((ByteBuffer) ByteBuffer.allocate(Long.BYTES).putLong(sequence).flip());
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The journal checkpoint can not be written", e);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The journal checkpoint can not be written", e);
+        }
+    }
+
+    /**
+     * Tells whether the journal was closed by a shutdown that journaled every committed
+     * change. After a crash the database may hold changes committed just before it that
+     * the journal never received.
+     */
+    public boolean wasClosedCleanly() {
+        return closedCleanly;
+    }
+
+    public synchronized long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    public synchronized long getDurableSequence() {
+        return durableSequence;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncer.join(TimeUnit.NANOSECONDS.toMillis(syncIntervalNanos) + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segment.buffer.force();
+            durableSequence = appendedSequence;
+        }
+        checkpoint();
+        if (failures.sum() == 0) {
+            try {
+                Files.createFile(directory.resolve(CLEAN_MARKER_FILE));
+            } catch (IOException e) {
+                log.warn("The transaction journal could not be marked as closed cleanly", e);
+            }
+        }
+        log.info("Closed transaction journal on sequence {}", durableSequence);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("bank.journal.records", this, TransactionJournal::getAppendedSequence)
+                .description("Records appended to the transaction journal")
+                .register(registry);
+        Gauge.builder("bank.journal.unsynced", this, journal -> journal.getAppendedSequence() - journal.getDurableSequence())
+                .description("Journal records appended but not yet forced to disk")
+                .register(registry);
+        FunctionTimer.builder("bank.journal.sync", this, journal -> journal.syncs.sum(),
+                journal -> journal.syncNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Forces of the journal segment to disk")
+                .register(registry);
+        FunctionCounter.builder("bank.journal.failures", this, journal -> journal.failures.sum())
+                .description("Committed postings that could not be journaled")
+                .register(registry);
+    }
+
+    private void journal(Supplier<JournalRecord> record) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            appendQuietly(record.get());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                appendQuietly(record.get());
+            }
+        });
+    }
+
+    private void appendQuietly(JournalRecord record) {
+        try {
+            append(record);
+        } catch (RuntimeException e) {
+            // The change is already committed, failing the caller now would invite a retry.
+            // The journal no longer holds everything the database does until it is reconciled.
+            failures.increment();
+            deleteCleanMarker();
+            log.error("Transaction {} of account {} could not be journaled", record.getTransactionId(), record.getAccountId(), e);
+        }
+    }
+
+    private void syncLoop() {
+        long lastSync = System.nanoTime();
+        while (true) {
+            final Segment target;
+            final long sequence;
+            synchronized (this) {
+                try {
+                    while (!closed && (appendedSequence == durableSequence
+                            || (waiters == 0 && System.nanoTime() - lastSync < syncIntervalNanos))) {
+                        if (appendedSequence == durableSequence) {
+                            wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(this, syncIntervalNanos - (System.nanoTime() - lastSync));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                target = segment;
+                sequence = appendedSequence;
+            }
+
+            final long start = System.nanoTime();
+            target.buffer.force();
+            lastSync = System.nanoTime();
+            syncs.increment();
+            syncNanos.add(lastSync - start);
+
+            synchronized (this) {
+                // A roll in the meantime forced the segment itself and may have moved further.
+                durableSequence = Math.max(durableSequence, sequence);
+                notifyAll();
+            }
+        }
+    }
+
+    private void deleteCleanMarker() {
+        try {
+            Files.deleteIfExists(directory.resolve(CLEAN_MARKER_FILE));
+        } catch (IOException e) {
+            log.warn("The clean shutdown marker of the transaction journal could not be deleted", e);
+        }
+    }
+
+    /**
+     * Starts the next segment once the current one is full. Called holding the journal
+     * monitor; the full segment is forced first so the durable sequence never skips it.
+     */
+    private void roll() {
+        segment.buffer.force();
+        durableSequence = appendedSequence;
+        notifyAll();
+        try {
+            segment = createSegment(appendedSequence + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The next journal segment can not be created", e);
+        }
+    }
+
+    /**
+     * Opens the newest segment and finds the end of the journal in it. A record torn by a
+     * crash ends the journal; it and anything written after it are cleared so later
+     * appends can not be confused with stale data.
+     */
+    private Segment openLastSegment() throws IOException {
+        final List<Path> paths = segmentPaths();
+        if (paths.isEmpty()) {
+            return createSegment(1);
+        }
+        final Path path = paths.get(paths.size() - 1);
+        final Segment last = new Segment(firstSequence(path), map(path, FileChannel.MapMode.READ_WRITE, 0));
+        while (last.count < last.capacity) {
+            final JournalRecord record = JournalRecord.readFrom(last.buffer, last.count * JournalRecord.SIZE);
+            if (record == null || record.getSequence() != last.firstSequence + last.count) {
+                break;
+            }
+            last.count++;
+        }
+        int cleared = 0;
+        for (int slot = last.count; slot < last.capacity; slot++) {
+            if (!JournalRecord.isEmpty(last.buffer, slot * JournalRecord.SIZE)) {
+                for (int i = 0; i < JournalRecord.SIZE; i += Long.BYTES) {
+                    last.buffer.putLong(slot * JournalRecord.SIZE + i, 0);
+                }
+                cleared++;
+            }
+        }
+        if (cleared > 0) {
+            last.buffer.force();
+            log.warn("Cleared {} torn or stale journal records after sequence {} in {}",
+                    cleared, last.firstSequence + last.count - 1, path);
+        }
+        return last;
+    }
+
+    private Segment createSegment(long firstSequence) throws IOException {
+        final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        return new Segment(firstSequence, map(path, FileChannel.MapMode.READ_WRITE, (long) segmentRecords * JournalRecord.SIZE));
+    }
+
+    private List<Path> segmentPaths() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                final String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long firstSequence(Path path) {
+        final String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Maps a whole segment file, creating it with the given size when it does not exist.
+     * The mapping stays valid after the channel is closed.
+     */
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode, long size) throws IOException {
+        final StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            final long length = Math.max(size, channel.size());
+            return channel.map(mode, 0, length - length % JournalRecord.SIZE);
+        }
+    }
+
+    private static final class Segment {
+        private final long firstSequence;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int count;
+
+        private Segment(long firstSequence, MappedByteBuffer buffer) {
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / JournalRecord.SIZE;
+        }
+    }
+}
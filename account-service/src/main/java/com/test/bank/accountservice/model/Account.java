@@ -16,10 +16,8 @@
 package com.test.bank.accountservice.model;
 
 import com.test.bank.accountservice.enums.AccountStatus;
-import lombok.AccessLevel;
+import com.test.bank.accountservice.util.Money;
 import lombok.Data;
-import lombok.Getter;
-import lombok.Setter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -29,7 +27,10 @@ import java.math.BigDecimal;
 
 @Data
 @Entity
-@Table(name = "account")
+@Table(name = "account", indexes = {
+        @Index(name = "ux_account_number", columnList = "account_number", unique = true),
+        @Index(name = "ix_account_holder_id", columnList = "holder_id")
+})
 public class Account implements Serializable {
 
     private static final long serialVersionUID = 78717340920010074L;
@@ -60,20 +61,23 @@ public class Account implements Serializable {
     @Column(name = "status")
     private AccountStatus status;
 
-    @Getter(AccessLevel.NONE)
-    @Column(name = "balance")
-    private BigDecimal balance = new BigDecimal(0);
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long version;
 
-    public synchronized void withdraw(BigDecimal amount) {
-        this.balance = getBalance().subtract(amount);
+    @Column(name = "balance_minor", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private long balanceMinor;
+
+    public void withdraw(long amountMinor) {
+        this.balanceMinor = Money.subtract(balanceMinor, amountMinor);
     }
 
-    public synchronized void deposit(BigDecimal amount) {
-        balance = getBalance().add(amount);
+    public void deposit(long amountMinor) {
+        this.balanceMinor = Money.add(balanceMinor, amountMinor);
     }
 
-    public synchronized BigDecimal getBalance() {
-        return this.balance;
+    public BigDecimal getBalance() {
+        return Money.toBigDecimal(balanceMinor);
     }
 
     public Account(){}
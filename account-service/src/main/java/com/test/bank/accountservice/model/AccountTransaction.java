@@ -16,6 +16,7 @@
 package com.test.bank.accountservice.model;
 
 import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.util.Money;
 import lombok.Data;
 import org.hibernate.annotations.GenericGenerator;
 
@@ -25,13 +26,16 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "account_transaction")
+@Table(name = "account_transaction", indexes = {
+        @Index(name = "ix_account_transaction_account_date", columnList = "account_id, transaction_date DESC, id DESC"),
+        @Index(name = "ix_account_transaction_transfer_id", columnList = "transfer_id")
+})
 public class AccountTransaction {
 
     @Id
-    @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
-    private String id;
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "com.test.bank.accountservice.model.SnowflakeIdentifierGenerator")
+    private Long id;
 
     @Column(name = "transaction_date", columnDefinition = "TIMESTAMP")
     private LocalDateTime transactionDate;
@@ -40,24 +44,32 @@ public class AccountTransaction {
     @Column(name = "transaction_type")
     private TransactionType transactionType;
 
-    @Column(name = "amount")
-    private BigDecimal amount;
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
 
     @Column(name = "description")
     private String description;
 
-    @ManyToOne
+    @Column(name = "transfer_id", length = 36)
+    private String transferId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "account_id")
     private Account account;
 
+    public BigDecimal getAmount() {
+        return Money.toBigDecimal(amountMinor);
+    }
+
     @Override
     public String toString() {
         final StringBuilder stringBuilder = new StringBuilder()
                 .append(" id = ").append(id)
                 .append(", transactionDate = ").append(transactionDate)
                 .append(", transactionType = ").append(transactionType)
-                .append(", amount = ").append(amount)
+                .append(", amount = ").append(getAmount())
                 .append(", description = ").append(description)
+                .append(", transferId = ").append(transferId)
                 .append(", account = ").append(account != null ? account.getAccountNumber() : "");
         return stringBuilder.toString();
     }
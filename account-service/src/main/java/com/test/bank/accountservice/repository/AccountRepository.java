@@ -16,16 +16,41 @@
 package com.test.bank.accountservice.repository;
 
 import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.repository.projection.AccountDetailView;
+import com.test.bank.accountservice.util.Money;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 
+import javax.persistence.LockModeType;
 import java.math.BigDecimal;
+import java.util.Optional;
 
 public interface AccountRepository extends JpaRepository<Account, Long> {
 
     Account findByAccountNumberAndPin(String number, String pin);
 
-    @Query("Select ac.balance from Account ac where ac.id = ?1")
-    BigDecimal getRunningBalance(Long accountId);
+    /**
+     * Reads the account to change it, locking its row until the transaction ends. The lock
+     * has to be taken by the first read of the account in the transaction: H2's MVStore does
+     * not re-check the version of a row it waited for, so a versioned update or a lock taken
+     * after a plain read can still lose a concurrent change.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("Select ac from Account ac where ac.id = ?1")
+    Optional<Account> findForUpdateById(long accountId);
+
+    @Query("Select new com.test.bank.accountservice.repository.projection.AccountDetailView("
+            + "ac.id, ac.accountNumber, ac.pin, ac.firstName, ac.lastName, ac.holderId, ac.balanceMinor) "
+            + "from Account ac where ac.id = ?1")
+    Optional<AccountDetailView> findDetailById(long accountId);
+
+    @Query("Select ac.balanceMinor from Account ac where ac.id = ?1")
+    Long getRunningBalanceMinor(Long accountId);
+
+    default BigDecimal getRunningBalance(Long accountId) {
+        final Long balanceMinor = getRunningBalanceMinor(accountId);
+        return balanceMinor != null ? Money.toBigDecimal(balanceMinor) : null;
+    }
 
 }
@@ -16,12 +16,34 @@
 package com.test.bank.accountservice.repository;
 
 import com.test.bank.accountservice.model.AccountTransaction;
+import com.test.bank.accountservice.repository.projection.TransactionView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
 
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+import static org.hibernate.annotations.QueryHints.READ_ONLY;
+
+public interface AccountTransactionRepository extends JpaRepository<AccountTransaction, Long>, AccountTransactionRepositoryCustom {
+
+    @Query("Select new com.test.bank.accountservice.repository.projection.TransactionView("
+            + "tx.id, tx.amountMinor, tx.transactionType, tx.description, tx.transactionDate, tx.transferId) "
+            + "from AccountTransaction tx where tx.account.id = ?1 order by tx.transactionDate desc")
+    List<TransactionView> findRecentByAccountId(long accountId, Pageable pageable);
 
-public interface AccountTransactionRepository extends JpaRepository<AccountTransaction, String> {
+    @QueryHints({
+            @QueryHint(name = FETCH_SIZE, value = "500"),
+            @QueryHint(name = READ_ONLY, value = "true")
+    })
+    @Query("Select tx from AccountTransaction tx where tx.account.id = ?1 order by tx.transactionDate, tx.id")
+    Stream<AccountTransaction> streamByAccountId(long accountId);
 
-    List<AccountTransaction> findTop5ByAccountIdOrderByTransactionDateDesc(long accountId);
+    List<AccountTransaction> findByTransferId(String transferId);
 
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.repository;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.repository.projection.TransactionView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface AccountTransactionRepositoryCustom {
+
+    /**
+     * Seeks one page of an account history ordered by {@code (transactionDate, id)}
+     * descending. Only rows strictly after the given position are returned, so the cost
+     * of a page does not grow with its depth. Every filter is optional.
+     */
+    List<TransactionView> findPage(long accountId, TransactionType type,
+                                   LocalDateTime from, LocalDateTime to,
+                                   LocalDateTime afterDate, Long afterId, int limit);
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.repository;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.model.AccountTransaction;
+import com.test.bank.accountservice.repository.projection.TransactionView;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccountTransactionRepositoryImpl implements AccountTransactionRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<TransactionView> findPage(long accountId, TransactionType type,
+                                          LocalDateTime from, LocalDateTime to,
+                                          LocalDateTime afterDate, Long afterId, int limit) {
+        final CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<TransactionView> query = builder.createQuery(TransactionView.class);
+        final Root<AccountTransaction> transaction = query.from(AccountTransaction.class);
+        final Path<LocalDateTime> transactionDate = transaction.get("transactionDate");
+        final Path<Long> id = transaction.get("id");
+
+        final List<Predicate> predicates = new ArrayList<>();
+        predicates.add(builder.equal(transaction.get("account").get("id"), accountId));
+        if (type != null) {
+            predicates.add(builder.equal(transaction.get("transactionType"), type));
+        }
+        if (from != null) {
+            predicates.add(builder.greaterThanOrEqualTo(transactionDate, from));
+        }
+        if (to != null) {
+            predicates.add(builder.lessThan(transactionDate, to));
+        }
+        if (afterDate != null) {
+            predicates.add(builder.or(
+                    builder.lessThan(transactionDate, afterDate),
+                    builder.and(builder.equal(transactionDate, afterDate), builder.lessThan(id, afterId))));
+        }
+
+        query.select(builder.construct(TransactionView.class,
+                id,
+                transaction.get("amountMinor"),
+                transaction.get("transactionType"),
+                transaction.get("description"),
+                transactionDate,
+                transaction.get("transferId")))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.desc(transactionDate), builder.desc(id));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
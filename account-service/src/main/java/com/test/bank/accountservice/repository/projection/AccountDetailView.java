@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.repository.projection;
+
+import lombok.Value;
+
+/**
+ * Read-only row of an account, built by a JPQL constructor expression so the detail
+ * page does not populate the persistence context.
+ */
+@Value
+public class AccountDetailView {
+    private long id;
+    private String accountNumber;
+    private String pin;
+    private String firstName;
+    private String lastName;
+    private String holderId;
+    private long balanceMinor;
+}
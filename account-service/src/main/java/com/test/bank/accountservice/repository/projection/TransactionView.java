@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.repository.projection;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only row of an account transaction, without the account back-reference.
+ */
+@Value
+public class TransactionView {
+    private long id;
+    private long amountMinor;
+    private TransactionType transactionType;
+    private String description;
+    private LocalDateTime transactionDate;
+    private String transferId;
+}
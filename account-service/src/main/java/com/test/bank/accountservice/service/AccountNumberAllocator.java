@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.util.Constants;
+import com.test.bank.accountservice.util.GeneralUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Hands out account numbers from blocks reserved on a database sequence.
+ * <p>
+ * Each call to the sequence reserves {@code block-size} consecutive numbers for this node,
+ * so numbers are unique across every node sharing the database and opening an account
+ * needs no uniqueness probe. The last digit is a Luhn check digit. Numbers left in a block
+ * when the service stops are never used.
+ * <p>
+ * The sequence is created by the schema migrations with the configured block size as its
+ * increment. Startup fails if the two differ: nodes reserving blocks of different sizes
+ * from the same sequence could hand out the same numbers.
+ */
+@Component
+public class AccountNumberAllocator {
+
+    static final String SEQUENCE_NAME = "account_number_seq";
+
+    // The check digit takes the last position of the account number.
+    private static final long FIRST_NUMBER = (long) Math.pow(10, Constants.MAX_DIGITS_ACCOUNT_NUMBER - 2);
+    private static final long LAST_NUMBER = FIRST_NUMBER * 10 - 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+
+    private long next;
+    private long limit;
+
+    public AccountNumberAllocator(JdbcTemplate jdbcTemplate,
+                                  @Value("${bank.account-number.block-size:100}") int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    @PostConstruct
+    public void validateSequence() {
+        final Long increment = jdbcTemplate.query(
+                "select increment from information_schema.sequences where sequence_name = ?",
+                resultSet -> resultSet.next() ? resultSet.getLong(1) : null,
+                SEQUENCE_NAME.toUpperCase());
+        if (increment == null) {
+            throw new IllegalStateException(String.format("Sequence %s does not exist, the schema migrations did not run.",
+                    SEQUENCE_NAME));
+        }
+        if (increment != blockSize) {
+            throw new IllegalStateException(String.format("Sequence %s reserves blocks of %d account numbers but "
+                    + "bank.account-number.block-size is %d.", SEQUENCE_NAME, increment, blockSize));
+        }
+    }
+
+    public synchronized String nextAccountNumber() {
+        if (next == limit) {
+            reserveBlock();
+        }
+        return GeneralUtils.appendLuhnCheckDigit(String.valueOf(next++));
+    }
+
+    private void reserveBlock() {
+        final long start = jdbcTemplate.queryForObject(String.format("select next value for %s", SEQUENCE_NAME), Long.class);
+        if (start > LAST_NUMBER) {
+            throw new IllegalStateException("Account numbers are exhausted.");
+        }
+        next = start;
+        limit = Math.min(start + blockSize, LAST_NUMBER + 1);
+    }
+}
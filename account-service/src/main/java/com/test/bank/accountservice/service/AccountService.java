@@ -16,6 +16,9 @@
 package com.test.bank.accountservice.service;
 
 import com.test.bank.accountservice.dto.*;
+import com.test.bank.accountservice.enums.TransactionType;
+
+import java.time.LocalDateTime;
 
 public interface AccountService {
 
@@ -29,12 +32,29 @@ public interface AccountService {
 
     ResponseDTO makeDeposit(Long accountId, TransactionRequestDTO transaction);
 
+    ResponseDTO makeDeposit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
     ResponseDTO makeWithdrawal(Long accountId, TransactionRequestDTO transaction);
 
+    ResponseDTO makeWithdrawal(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
     ResponseDTO processCheck(Long accountId, TransactionRequestDTO transaction);
 
+    ResponseDTO processCheck(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
     ResponseDTO processDebit(Long accountId, TransactionRequestDTO transaction);
 
+    ResponseDTO processDebit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
+    ResponseDTO transfer(Long accountId, TransferRequestDTO transfer);
+
+    ResponseDTO transfer(Long accountId, TransferRequestDTO transfer, String idempotencyKey);
+
+    TransactionPageDTO findTransactions(long accountId, TransactionType type, LocalDateTime from,
+                                        LocalDateTime to, String cursor, Integer limit);
+
     AccountBalanceDTO getCurrentBalance(long accountId);
 
+    BatchTransactionResponseDTO processBatch(BatchTransactionRequestDTO batch);
+
 }
@@ -15,40 +15,56 @@
  */
 package com.test.bank.accountservice.service;
 
+import com.test.bank.accountservice.concurrency.AccountLockRegistry;
+import com.test.bank.accountservice.concurrency.ConcurrencyMode;
+import com.test.bank.accountservice.concurrency.OptimisticRetryExecutor;
+import com.test.bank.accountservice.concurrency.ShardedLedgerExecutor;
 import com.test.bank.accountservice.dto.*;
 import com.test.bank.accountservice.enums.AccountStatus;
 import com.test.bank.accountservice.enums.TransactionType;
 import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import com.test.bank.accountservice.journal.TransactionJournal;
 import com.test.bank.accountservice.model.Account;
 import com.test.bank.accountservice.model.AccountTransaction;
 import com.test.bank.accountservice.repository.AccountRepository;
 import com.test.bank.accountservice.repository.AccountTransactionRepository;
+import com.test.bank.accountservice.repository.projection.AccountDetailView;
+import com.test.bank.accountservice.repository.projection.TransactionView;
+import com.test.bank.accountservice.service.AccountServiceMetrics.Operation;
+import com.test.bank.accountservice.timing.RequestTimings;
+import com.test.bank.accountservice.timing.RequestTimings.Phase;
 import com.test.bank.accountservice.util.Constants;
 import com.test.bank.accountservice.util.GeneralUtils;
+import com.test.bank.accountservice.util.Money;
 import io.micrometer.core.instrument.util.StringUtils;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.Random;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.test.bank.accountservice.enums.TransactionType.*;
 import static com.test.bank.accountservice.util.GeneralUtils.formatDateTimeToString;
-import static com.test.bank.accountservice.util.GeneralUtils.generateAccountNumber;
 
 @Service
 @Transactional(rollbackOn = Exception.class)
 @Log4j2
 public class AccountServiceImpl implements AccountService {
-    private static Random random = new Random();
+    private static final char CURSOR_SEPARATOR = '|';
 
     @Autowired
     private AccountRepository accountRepository;
@@ -56,49 +72,95 @@ public class AccountServiceImpl implements AccountService {
     @Autowired
     private AccountTransactionRepository accountTransactionRepository;
 
+    @Autowired
+    private AccountLockRegistry accountLockRegistry;
+
+    @Autowired
+    private OptimisticRetryExecutor optimisticRetryExecutor;
+
+    @Autowired(required = false)
+    private ShardedLedgerExecutor shardedLedgerExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private BalanceStore balanceStore;
+
+    @Autowired
+    private RecentTransactionsCache recentTransactionsCache;
+
+    @Autowired
+    private AccountNumberAllocator accountNumberAllocator;
+
+    @Autowired
+    private AccountServiceMetrics accountServiceMetrics;
+
+    @Autowired(required = false)
+    private TransactionJournal transactionJournal;
+
+    @Value("${bank.transaction.concurrency-mode:STRIPED}")
+    private ConcurrencyMode concurrencyMode;
+
+    @Value("${bank.transaction.batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    @Value("${bank.transaction.batch.max-items:10000}")
+    private int batchMaxItems;
+
+    @Value("${bank.transaction.history.default-page-size:50}")
+    private int historyDefaultPageSize;
+
+    @Value("${bank.transaction.history.max-page-size:500}")
+    private int historyMaxPageSize;
+
     @Override
     public AccountDetailDTO findAccount(Long accountId) {
-        final Optional<Account> optionalAccount = accountRepository.findById(accountId);
-        if(!optionalAccount.isPresent()){
-            throw new ApiException("The account does not exist");
-        }
-        return mapAccountToDTO(optionalAccount.get());
+        return accountServiceMetrics.time(Operation.FIND, () -> {
+            final Optional<AccountDetailView> optionalAccount = accountRepository.findDetailById(accountId);
+            if(!optionalAccount.isPresent()){
+                throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, "The account does not exist");
+            }
+            return mapAccountToDTO(optionalAccount.get());
+        });
     }
 
     @Override
     public AccountDTO searchAccount(String number, String pin) {
-        assertValidNumber(number);
-        assertValidPin(pin);
-
-        final Account account = accountRepository.findByAccountNumberAndPin(number, pin);
-
-        if(account == null){
-            throw new ApiException("The account does not exist");
-        }
-
-        final AccountDTO dto = new AccountDTO();
-        dto.setAccountId(account.getId());
-        dto.setAccountNumber(account.getAccountNumber());
-        dto.setHolderFullName(String.format("%s %s", account.getFirstName(),account.getLastName()));
-        return dto;
+        return accountServiceMetrics.time(Operation.SEARCH, () -> {
+            assertValidNumber(number);
+            assertValidPin(pin);
+
+            final Account account = accountRepository.findByAccountNumberAndPin(number, pin);
+
+            if(account == null){
+                throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, "The account does not exist");
+            }
+
+            final AccountDTO dto = new AccountDTO();
+            dto.setAccountId(account.getId());
+            dto.setAccountNumber(account.getAccountNumber());
+            dto.setHolderFullName(String.format("%s %s", account.getFirstName(),account.getLastName()));
+            return dto;
+        });
     }
 
-    private AccountDetailDTO mapAccountToDTO(Account account) {
-        if(account == null){
-            throw new ApiException("Account does not exist");
-        }
-
+    private AccountDetailDTO mapAccountToDTO(AccountDetailView account) {
         final AccountDetailDTO detailsDTO = new AccountDetailDTO();
         detailsDTO.setAccountId(account.getId());
         detailsDTO.setAccountNumber(account.getAccountNumber());
         detailsDTO.setAccountPin(account.getPin());
 
-        detailsDTO.setCurrentBalance(account.getBalance());
+        detailsDTO.setCurrentBalance(Money.toBigDecimal(account.getBalanceMinor()));
         detailsDTO.setHolderFullName(String.format("%s %s", account.getFirstName(),account.getLastName()));
         detailsDTO.setHolderId(account.getHolderId());
 
-        final List<AccountTransaction> accountTransactions = accountTransactionRepository
-                .findTop5ByAccountIdOrderByTransactionDateDesc(account.getId());
+        final List<TransactionView> accountTransactions = recentTransactionsCache.recent(account.getId(),
+                () -> accountTransactionRepository.findRecentByAccountId(account.getId(),
+                        PageRequest.of(0, recentTransactionsCache.getSize())));
 
         if(!CollectionUtils.isEmpty(accountTransactions)){
             detailsDTO.setLastTransactions(accountTransactions
@@ -112,122 +174,553 @@ public class AccountServiceImpl implements AccountService {
 
     private void assertValidPin(String pin) {
         if(StringUtils.isBlank(pin)){
-            throw new ApiException("Pin number is required");
+            throw new ApiException(ErrorReason.MISSING_CREDENTIALS, "Pin number is required");
         }
     }
 
     private void assertValidNumber(String number) {
         if(StringUtils.isBlank(number)){
-            throw new ApiException("Account number is required");
+            throw new ApiException(ErrorReason.MISSING_CREDENTIALS, "Account number is required");
         }
     }
 
-    private TransactionDetailDTO mapTransactionToDTO(AccountTransaction accountTransaction) {
+    private TransactionDetailDTO mapTransactionToDTO(TransactionView accountTransaction) {
         final TransactionDetailDTO transactionDTO = new TransactionDetailDTO();
-        transactionDTO.setAmount(accountTransaction.getAmount());
+        transactionDTO.setTransactionId(String.valueOf(accountTransaction.getId()));
+        transactionDTO.setAmount(Money.toBigDecimal(accountTransaction.getAmountMinor()));
         transactionDTO.setTransactionDate(formatDateTimeToString(accountTransaction.getTransactionDate()));
         transactionDTO.setDescription(accountTransaction.getDescription());
         transactionDTO.setTransactionType(accountTransaction.getTransactionType().toString());
+        transactionDTO.setTransferId(accountTransaction.getTransferId());
         return transactionDTO;
     }
 
     @Override
-    public ResponseDTO openAccount(AccountRequestDTO account) {
-        assertValidData(account);
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public TransactionPageDTO findTransactions(long accountId, TransactionType type, LocalDateTime from,
+                                               LocalDateTime to, String cursor, Integer limit) {
+        return accountServiceMetrics.time(Operation.HISTORY,
+                () -> readTransactionPage(accountId, type, from, to, cursor, limit));
+    }
 
-        final Account accountToSave = new Account();
-        accountToSave.setFirstName(account.getFirstName());
-        accountToSave.setLastName(account.getLastName());
-        accountToSave.setHolderId(account.getHolderIdNumber());
-        accountToSave.setPin(account.getAccountPin());
-        accountToSave.setAccountNumber(generateAccountNumber());
-        accountToSave.setStatus(AccountStatus.ACTIVE);
-        accountRepository.save(accountToSave);
+    private TransactionPageDTO readTransactionPage(long accountId, TransactionType type, LocalDateTime from,
+                                                   LocalDateTime to, String cursor, Integer limit) {
+        final int pageSize = limit != null ? limit : historyDefaultPageSize;
+        if(pageSize < 1 || pageSize > historyMaxPageSize){
+            throw new ApiException(ErrorReason.INVALID_QUERY, String.format("Page size must be between 1 and %d.", historyMaxPageSize));
+        }
+        if(from != null && to != null && !from.isBefore(to)){
+            throw new ApiException(ErrorReason.INVALID_QUERY, "The start of the date range must be before its end.");
+        }
+        if(!accountRepository.existsById(accountId)){
+            throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, "Account does not exist");
+        }
 
-        final ResponseDTO responseDTO = new ResponseDTO();
-        responseDTO.setAccountNumber(accountToSave.getAccountNumber());
-        responseDTO.setPin(accountToSave.getPin());
-        return responseDTO;
+        final PageCursor after = cursor != null ? decodeCursor(cursor) : PageCursor.FIRST_PAGE;
+
+        // One extra row tells whether another page exists without a count query.
+        final List<TransactionView> rows = accountTransactionRepository
+                .findPage(accountId, type, from, to, after.transactionDate, after.transactionId, pageSize + 1);
+        final List<TransactionView> page = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+
+        final TransactionPageDTO pageDTO = new TransactionPageDTO();
+        pageDTO.setTransactions(page.stream().map(this::mapTransactionToDTO).collect(Collectors.toList()));
+        if(rows.size() > pageSize){
+            final TransactionView last = page.get(page.size() - 1);
+            pageDTO.setNextCursor(encodeCursor(last.getTransactionDate(), last.getId()));
+        }
+        return pageDTO;
+    }
+
+    private String encodeCursor(LocalDateTime transactionDate, long transactionId) {
+        final String position = transactionDate.toString() + CURSOR_SEPARATOR + transactionId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private PageCursor decodeCursor(String cursor) {
+        try {
+            final String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int separator = position.indexOf(CURSOR_SEPARATOR);
+            if(separator < 0 || separator == position.length() - 1){
+                throw new IllegalArgumentException(position);
+            }
+            return new PageCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.valueOf(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ApiException(ErrorReason.INVALID_QUERY, "The page cursor is not valid.");
+        }
+    }
+
+    /**
+     * Opens the account in its own database transaction, so the timer of the operation
+     * includes the commit.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO openAccount(AccountRequestDTO account) {
+        return accountServiceMetrics.time(Operation.OPEN, () -> {
+            assertValidData(account);
+            return transactionTemplate.execute(status -> {
+                RequestTimings.timeCommit();
+                final Account accountToSave = new Account();
+                accountToSave.setFirstName(account.getFirstName());
+                accountToSave.setLastName(account.getLastName());
+                accountToSave.setHolderId(account.getHolderIdNumber());
+                accountToSave.setPin(account.getAccountPin());
+                accountToSave.setAccountNumber(accountNumberAllocator.nextAccountNumber());
+                accountToSave.setStatus(AccountStatus.ACTIVE);
+                accountRepository.save(accountToSave);
+                balanceStore.update(accountToSave);
+                journalStatus(accountToSave);
+
+                final ResponseDTO responseDTO = new ResponseDTO();
+                responseDTO.setAccountNumber(accountToSave.getAccountNumber());
+                responseDTO.setPin(accountToSave.getPin());
+                return responseDTO;
+            });
+        });
     }
 
     private void assertValidData(AccountRequestDTO account) {
         if(account.getAccountPin() == null || account.getAccountPin().length() == 0){
-            throw new ApiException("Pin number is mandatory.");
+            throw new ApiException(ErrorReason.INVALID_PIN, "Pin number is mandatory.");
         }
 
         if(!GeneralUtils.isPinNumericNonZero(account.getAccountPin())){
-            throw new ApiException("Pin number should be of 4 numeric digits with non zero values.");
+            throw new ApiException(ErrorReason.INVALID_PIN, "Pin number should be of 4 numeric digits with non zero values.");
         }
 
         if(!account.getAccountPin().equals(account.getConfAccountPin())){
-            throw new ApiException("Pin and Pin Confirmation does not match.");
+            throw new ApiException(ErrorReason.INVALID_PIN, "Pin and Pin Confirmation does not match.");
         }
     }
 
     @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
     public ResponseDTO closeAccount(long accountId) {
-        final Optional<Account> accountOptional = accountRepository.findById(accountId);
-        final ResponseDTO responseDTO = new ResponseDTO();
-        assertExistAccount(accountOptional);
+        return accountServiceMetrics.time(Operation.CLOSE, () -> executeForAccount(accountId, () -> {
+            final long loadStart = RequestTimings.start();
+            final Optional<Account> accountOptional = findForChange(accountId);
+            RequestTimings.stop(Phase.LOAD, loadStart);
+            final ResponseDTO responseDTO = new ResponseDTO();
+            assertExistAccount(accountOptional);
+
+            final Account account = accountOptional.get();
+            if(account.getBalanceMinor() < 0){
+                throw new ApiException(ErrorReason.ACCOUNT_OVERDRAWN, "The account can not be closed due to it is overdrawn.");
+            }
+
+            account.setStatus(AccountStatus.CLOSED);
+            accountRepository.save(account);
+            balanceStore.update(account);
+            journalStatus(account);
+            responseDTO.setAccountNumber(account.getAccountNumber());
+
+            return responseDTO;
+        }));
+    }
 
-        final Account account = accountOptional.get();
-        if(account.getBalance().compareTo(BigDecimal.ZERO) < 0){
-            throw new ApiException("The account can not be closed due to it is overdrawn.");
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public AccountBalanceDTO getCurrentBalance(long accountId) {
+        return accountServiceMetrics.time(Operation.BALANCE, () -> readBalance(accountId));
+    }
+
+    private AccountBalanceDTO readBalance(long accountId) {
+        long balanceMinor = balanceStore.getBalance(accountId);
+        if(balanceMinor == BalanceStore.MISSING){
+            final long generation = balanceStore.generation(accountId);
+            final long loadStart = RequestTimings.start();
+            final Optional<Account> accountOptional = accountRepository.findById(accountId);
+            RequestTimings.stop(Phase.LOAD, loadStart);
+            if(!accountOptional.isPresent()){
+                throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, "Account does not exist");
+            }
+            balanceStore.load(accountOptional.get(), generation);
+            balanceMinor = accountOptional.get().getBalanceMinor();
         }
 
-        account.setStatus(AccountStatus.CLOSED);
-        accountRepository.save(account);
-        responseDTO.setAccountNumber(account.getAccountNumber());
+        final AccountBalanceDTO balanceDTO = new AccountBalanceDTO();
+        balanceDTO.setAccountId(accountId);
+        balanceDTO.setBalance(Money.toBigDecimal(balanceMinor));
+        return balanceDTO;
+    }
 
-        return responseDTO;
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO makeDeposit(Long accountId, TransactionRequestDTO transaction) {
+        return makeDeposit(accountId, transaction, null);
     }
 
     @Override
-    public AccountBalanceDTO getCurrentBalance(long accountId) {
-        if(!accountRepository.existsById(accountId)){
-            throw new ApiException("Account does not exist");
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO makeDeposit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        transaction.setType(Constants.TRANSACTION_DEBIT);
+        return processTransaction(accountId, transaction, DEPOSIT, idempotencyKey);
+    }
+
+    private ResponseDTO processTransaction(Long accountId, TransactionRequestDTO transaction,
+                                           TransactionType transactionType, String idempotencyKey){
+        return accountServiceMetrics.time(operationOf(transactionType),
+                () -> postIdempotently(accountId, transaction, transactionType, idempotencyKey));
+    }
+
+    private static Operation operationOf(TransactionType transactionType) {
+        switch (transactionType) {
+            case DEPOSIT:
+                return Operation.DEPOSIT;
+            case WITHDRAWAL:
+                return Operation.WITHDRAWAL;
+            case CHECKS:
+                return Operation.CHECK;
+            default:
+                return Operation.DEBIT;
         }
+    }
 
-        final AccountBalanceDTO balanceDTO = new AccountBalanceDTO();
-        final BigDecimal runningBalance = accountRepository.getRunningBalance(accountId);
+    private ResponseDTO postIdempotently(Long accountId, TransactionRequestDTO transaction,
+                                         TransactionType transactionType, String idempotencyKey){
+        assertValidTransaction(transaction);
+        final boolean storedBalanceIsCurrent = isStoredBalanceCurrent();
 
-        if(runningBalance != null){
-            balanceDTO.setAccountId(accountId);
-            balanceDTO.setBalance(runningBalance);
+        if(idempotencyKey == null){
+            return executeForAccount(accountId,
+                    () -> postTransaction(accountId, transaction, transactionType, storedBalanceIsCurrent));
         }
 
-        return balanceDTO;
+        final Optional<String> replayed = idempotencyStore.findTransactionId(idempotencyKey, accountId, transactionType);
+        if(replayed.isPresent()){
+            return replayResponse(replayed.get());
+        }
+
+        try {
+            return executeForAccount(accountId, () -> {
+                // Checked again in the posting transaction. Under the account lock or on its shard a
+                // concurrent retry has committed by now; in OPTIMISTIC mode both may get this far.
+                final Optional<String> posted = idempotencyStore.findTransactionId(idempotencyKey, accountId, transactionType);
+                if(posted.isPresent()){
+                    return replayResponse(posted.get());
+                }
+                final ResponseDTO responseDTO = postTransaction(accountId, transaction, transactionType, storedBalanceIsCurrent);
+                idempotencyStore.record(idempotencyKey, accountId, transactionType, responseDTO.getTransactionId());
+                return responseDTO;
+            });
+        } catch (DataIntegrityViolationException e) {
+            return replayResponse(findRacingPosting(idempotencyKey, accountId, transactionType, e));
+        }
     }
 
-    @Override
-    public  ResponseDTO makeDeposit(Long accountId, TransactionRequestDTO transaction) {
-        transaction.setType(Constants.TRANSACTION_DEBIT);
-        return processTransaction(accountId, transaction, DEPOSIT);
+    /**
+     * Looks up the posting a concurrent retry committed with the same key, when storing the
+     * key failed and rolled back the posting made with it.
+     */
+    private String findRacingPosting(String idempotencyKey, long accountId, TransactionType transactionType,
+                                     DataIntegrityViolationException failure) {
+        return idempotencyStore.findTransactionId(idempotencyKey, accountId, transactionType).orElseThrow(() -> failure);
     }
 
-    private synchronized ResponseDTO processTransaction(Long accountId, TransactionRequestDTO transaction, TransactionType transactionType){
+    private ResponseDTO replayResponse(String transactionId) {
         final ResponseDTO responseDTO = new ResponseDTO();
-        final Optional<Account> accountOptional = accountRepository.findById(accountId);
+        responseDTO.setTransactionId(transactionId);
+        return responseDTO;
+    }
 
-        assertExistAccount(accountOptional);
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public BatchTransactionResponseDTO processBatch(BatchTransactionRequestDTO batch) {
+        return accountServiceMetrics.time(Operation.BATCH, () -> processItems(batch));
+    }
+
+    private BatchTransactionResponseDTO processItems(BatchTransactionRequestDTO batch) {
+        final List<BatchTransactionItemDTO> items = batch.getTransactions();
+        if(CollectionUtils.isEmpty(items)){
+            throw new ApiException(ErrorReason.INVALID_BATCH, "At least one transaction is required to process a batch.");
+        }
+        if(items.size() > batchMaxItems){
+            throw new ApiException(ErrorReason.INVALID_BATCH, String.format("A batch can not contain more than %d transactions.", batchMaxItems));
+        }
+
+        final int chunkSize = batchChunkSize > 0 ? batchChunkSize : items.size();
+        final List<BatchTransactionResultDTO> results = new ArrayList<>(items.size());
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            results.addAll(processChunk(from, items.subList(from, Math.min(from + chunkSize, items.size()))));
+        }
+
+        final BatchTransactionResponseDTO responseDTO = new BatchTransactionResponseDTO();
+        responseDTO.setResults(results);
+        responseDTO.setSucceeded((int) results.stream().filter(BatchTransactionResultDTO::isSuccess).count());
+        responseDTO.setFailed(results.size() - responseDTO.getSucceeded());
+        return responseDTO;
+    }
+
+    /**
+     * Posts a chunk of a batch in a single database transaction. Rejected items do not
+     * affect the rest of the chunk; only a failure to commit fails every item of it.
+     */
+    private List<BatchTransactionResultDTO> processChunk(int offset, List<BatchTransactionItemDTO> chunk) {
+        final Set<Long> accountIds = chunk.stream()
+                .map(BatchTransactionItemDTO::getAccountId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        try {
+            return executeForAccounts(accountIds, () -> postChunk(offset, chunk));
+        } catch (RuntimeException e) {
+            log.error("Batch chunk starting at {} could not be processed", offset, e);
+            String message = "The transaction could not be committed.";
+            if(e instanceof ApiException){
+                accountServiceMetrics.countRejection((ApiException) e);
+                message = e.getMessage();
+            }
+            final List<BatchTransactionResultDTO> results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                results.add(new BatchTransactionResultDTO(offset + i, chunk.get(i).getAccountId(), false, null, message));
+            }
+            return results;
+        }
+    }
+
+    private List<BatchTransactionResultDTO> postChunk(int offset, List<BatchTransactionItemDTO> chunk) {
+        final List<BatchTransactionResultDTO> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            final BatchTransactionItemDTO item = chunk.get(i);
+            try {
+                assertValidBatchItem(item);
+                final ResponseDTO responseDTO = postTransaction(item.getAccountId(), item, item.getOperation(), false);
+                results.add(new BatchTransactionResultDTO(offset + i, item.getAccountId(), true, responseDTO.getTransactionId(), null));
+            } catch (ApiException e) {
+                accountServiceMetrics.countRejection(e);
+                results.add(new BatchTransactionResultDTO(offset + i, item.getAccountId(), false, null, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    private void assertValidBatchItem(BatchTransactionItemDTO item) {
+        if(item.getAccountId() == null){
+            throw new ApiException(ErrorReason.INVALID_BATCH, "Account id is required for every transaction of a batch.");
+        }
+        if(item.getOperation() == null || item.getOperation() == TRANSFER){
+            throw new ApiException(ErrorReason.INVALID_BATCH, "Operation is mandatory [DEPOSIT, WITHDRAWAL, DEBIT, CHECKS]");
+        }
+        if(item.getOperation() == DEPOSIT){
+            item.setType(Constants.TRANSACTION_DEBIT);
+        } else if(item.getOperation() == WITHDRAWAL){
+            item.setType(Constants.TRANSACTION_CREDIT);
+        }
+        assertValidTransaction(item);
+    }
+
+    private void assertValidTransaction(TransactionRequestDTO transaction) {
         assertTypeNotNull(transaction.getType());
         assertValidType(transaction.getType());
+        if(transaction.getAmount() == null || transaction.getAmount().signum() <= 0){
+            throw new ApiException(ErrorReason.INVALID_AMOUNT, "A positive amount is required to process current operation.");
+        }
+    }
 
-        final Account account = accountOptional.get();
-        final BigDecimal amount = calculateSignedAmount(transaction);
+    private <T> T executeForAccount(Long accountId, Supplier<T> work) {
+        return executeForAccounts(Collections.singleton(accountId), work);
+    }
 
-        assertAccountNotOverdrawn(account.getBalance(), amount);
+    /**
+     * Runs the work against the given accounts under the configured concurrency mode.
+     * Locks are taken before the database transaction starts, so waiting for a busy
+     * account does not hold a pooled connection. Work spanning several shards runs once
+     * every shard owning one of the accounts is held by it.
+     */
+    private <T> T executeForAccounts(Collection<Long> accountIds, Supplier<T> work) {
+        final Supplier<T> timedWork = () -> {
+            RequestTimings.timeCommit();
+            return work.get();
+        };
+        if (concurrencyMode == ConcurrencyMode.SHARDED && !accountIds.isEmpty()) {
+            return shardedLedgerExecutor.execute(accountIds, timedWork);
+        }
+        if (concurrencyMode != ConcurrencyMode.STRIPED) {
+            return optimisticRetryExecutor.execute(timedWork);
+        }
+        return accountLockRegistry.executeLocked(accountIds, () -> transactionTemplate.execute(status -> timedWork.get()));
+    }
+
+    /**
+     * Reads an account to change it. OPTIMISTIC mode reads it plainly and leaves conflicts
+     * to the versioned update; the other modes lock its row until the transaction ends,
+     * since the first read of the account has to take the lock for H2's MVStore to keep a
+     * concurrent change.
+     */
+    private Optional<Account> findForChange(long accountId){
+        return concurrencyMode == ConcurrencyMode.OPTIMISTIC
+                ? accountRepository.findById(accountId) : accountRepository.findForUpdateById(accountId);
+    }
+
+    /**
+     * The stored balance of an account is the committed one while the account is locked,
+     * since the store is updated before the lock is released, unless a transaction started
+     * before taking the lock may have changed the account already. Sharded groups and
+     * batches post several changes of an account in one transaction, and OPTIMISTIC mode
+     * does not lock the account, so they never qualify.
+     */
+    private boolean isStoredBalanceCurrent() {
+        return concurrencyMode == ConcurrencyMode.STRIPED && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private ResponseDTO postTransaction(Long accountId, TransactionRequestDTO transaction, TransactionType transactionType,
+                                        boolean storedBalanceIsCurrent){
+        final long amount = Money.toMinorUnits(transaction.getAmount());
+        final long signedAmount = calculateSignedAmount(transaction, amount);
+        if(storedBalanceIsCurrent && signedAmount < 0){
+            // Uncovered debits are rejected from the stored balance without reading the
+            // account. Covered ones are checked again against the account read below.
+            final long storedBalance = balanceStore.getBalance(accountId);
+            if(storedBalance != BalanceStore.MISSING){
+                assertAccountNotOverdrawn(storedBalance, signedAmount);
+            }
+        }
+
+        final ResponseDTO responseDTO = new ResponseDTO();
+        final long loadStart = RequestTimings.start();
+        final Optional<Account> accountOptional = findForChange(accountId);
+        RequestTimings.stop(Phase.LOAD, loadStart);
+
+        assertExistAccount(accountOptional);
+
+        final Account account = accountOptional.get();
+        assertAccountNotOverdrawn(account.getBalanceMinor(), signedAmount);
 
         if(transaction.getType().equals(Constants.TRANSACTION_DEBIT)){
-            account.deposit(transaction.getAmount());
+            account.deposit(amount);
         } else {
-            account.withdraw(transaction.getAmount());
+            account.withdraw(amount);
         }
 
+        final long saveStart = RequestTimings.start();
         accountRepository.save(account);
+        balanceStore.update(account);
+
+        final String transactionId = saveTransaction(transactionType, transaction, account, signedAmount);
+        RequestTimings.stop(Phase.SAVE, saveStart);
+        responseDTO.setTransactionId(transactionId);
+        return responseDTO;
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO transfer(Long accountId, TransferRequestDTO transfer) {
+        return transfer(accountId, transfer, null);
+    }
+
+    /**
+     * Moves money between two accounts in a single database transaction. Both accounts
+     * are owned through {@link #executeForAccounts}, which acquires their locks in a
+     * stable order, so opposite transfers between the same pair can not deadlock.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO transfer(Long accountId, TransferRequestDTO transfer, String idempotencyKey) {
+        return accountServiceMetrics.time(Operation.TRANSFER, () -> postTransferIdempotently(accountId, transfer, idempotencyKey));
+    }
+
+    private ResponseDTO postTransferIdempotently(Long accountId, TransferRequestDTO transfer, String idempotencyKey) {
+        assertValidTransfer(accountId, transfer);
+
+        if(idempotencyKey == null){
+            return executeForAccounts(Arrays.asList(accountId, transfer.getTargetAccountId()),
+                    () -> postTransfer(accountId, transfer));
+        }
+
+        final Optional<String> replayed = idempotencyStore.findTransactionId(idempotencyKey, accountId, TRANSFER);
+        if(replayed.isPresent()){
+            return replayTransferResponse(replayed.get());
+        }
+
+        try {
+            return executeForAccounts(Arrays.asList(accountId, transfer.getTargetAccountId()), () -> {
+                final Optional<String> posted = idempotencyStore.findTransactionId(idempotencyKey, accountId, TRANSFER);
+                if(posted.isPresent()){
+                    return replayTransferResponse(posted.get());
+                }
+                final ResponseDTO responseDTO = postTransfer(accountId, transfer);
+                idempotencyStore.record(idempotencyKey, accountId, TRANSFER, responseDTO.getTransactionId());
+                return responseDTO;
+            });
+        } catch (DataIntegrityViolationException e) {
+            return replayTransferResponse(findRacingPosting(idempotencyKey, accountId, TRANSFER, e));
+        }
+    }
 
-        final String transactionId = saveTransaction(transactionType, transaction, account, amount);
+    private void assertValidTransfer(Long accountId, TransferRequestDTO transfer) {
+        if(transfer.getTargetAccountId() == null){
+            throw new ApiException(ErrorReason.INVALID_TRANSFER, "Target account id is required to process a transfer.");
+        }
+        if(transfer.getTargetAccountId().equals(accountId)){
+            throw new ApiException(ErrorReason.INVALID_TRANSFER, "Source and target accounts of a transfer must be different.");
+        }
+        if(transfer.getAmount() == null || transfer.getAmount().signum() <= 0){
+            throw new ApiException(ErrorReason.INVALID_AMOUNT, "A positive amount is required to process current operation.");
+        }
+    }
+
+    private ResponseDTO postTransfer(Long accountId, TransferRequestDTO transfer){
+        final long loadStart = RequestTimings.start();
+        // Rows are read in id order, so where the read locks them opposite transfers wait
+        // for each other in the database too instead of deadlocking.
+        final Optional<Account> sourceOptional;
+        final Optional<Account> targetOptional;
+        if(accountId < transfer.getTargetAccountId()){
+            sourceOptional = findForChange(accountId);
+            targetOptional = findForChange(transfer.getTargetAccountId());
+        } else {
+            targetOptional = findForChange(transfer.getTargetAccountId());
+            sourceOptional = findForChange(accountId);
+        }
+        RequestTimings.stop(Phase.LOAD, loadStart);
+        assertExistAccount(sourceOptional);
+        assertExistAccount(targetOptional);
+
+        final Account source = sourceOptional.get();
+        final Account target = targetOptional.get();
+        final long amount = Money.toMinorUnits(transfer.getAmount());
+
+        // Both new balances are computed before touching either account, so a rejected
+        // transfer leaves no partial state behind.
+        final long sourceBalance = Money.subtract(source.getBalanceMinor(), amount);
+        final long targetBalance = Money.add(target.getBalanceMinor(), amount);
+        assertNotOverdrawn(sourceBalance);
+
+        final long saveStart = RequestTimings.start();
+        source.setBalanceMinor(sourceBalance);
+        target.setBalanceMinor(targetBalance);
+        accountRepository.save(source);
+        accountRepository.save(target);
+        balanceStore.update(source);
+        balanceStore.update(target);
+
+        final String transferId = UUID.randomUUID().toString();
+        final TransactionRequestDTO leg = new TransactionRequestDTO(transfer.getAmount(), transfer.getDescription());
+        final String transactionId = saveTransferLeg(leg, source, Money.negate(amount), transferId);
+        saveTransferLeg(leg, target, amount, transferId);
+        RequestTimings.stop(Phase.SAVE, saveStart);
+
+        final ResponseDTO responseDTO = new ResponseDTO();
         responseDTO.setTransactionId(transactionId);
+        responseDTO.setTransferId(transferId);
+        return responseDTO;
+    }
+
+    private String saveTransferLeg(TransactionRequestDTO leg, Account account, long amount, String transferId) {
+        final AccountTransaction accountTransaction = buildTransaction(TRANSFER, leg, account);
+        accountTransaction.setAmountMinor(amount);
+        accountTransaction.setTransferId(transferId);
+        accountTransactionRepository.save(accountTransaction);
+        recentTransactionsCache.append(account.getId(), toView(accountTransaction));
+        journal(accountTransaction, account);
+        return String.valueOf(accountTransaction.getId());
+    }
+
+    private ResponseDTO replayTransferResponse(String transactionId) {
+        final ResponseDTO responseDTO = replayResponse(transactionId);
+        accountTransactionRepository.findById(Long.valueOf(transactionId))
+                .ifPresent(accountTransaction -> responseDTO.setTransferId(accountTransaction.getTransferId()));
         return responseDTO;
     }
 
@@ -235,43 +728,65 @@ public class AccountServiceImpl implements AccountService {
         if(!Arrays.asList(
                 Constants.TRANSACTION_CREDIT,Constants.TRANSACTION_DEBIT)
                 .contains(type)){
-            throw new ApiException("Transaction type [DEBIT, CREDIT] is required to process current operation.");
+            throw new ApiException(ErrorReason.INVALID_TRANSACTION_TYPE, "Transaction type [DEBIT, CREDIT] is required to process current operation.");
         }
     }
 
     private String saveTransaction(TransactionType transactionType,
                                    TransactionRequestDTO transaction,
-                                   Account account, BigDecimal amount) {
+                                   Account account, long amount) {
         final AccountTransaction accountTransaction = buildTransaction(transactionType, transaction, account);
-        accountTransaction.setAmount(amount);
+        accountTransaction.setAmountMinor(amount);
         accountTransactionRepository.save(accountTransaction);
-        return accountTransaction.getId();
+        recentTransactionsCache.append(account.getId(), toView(accountTransaction));
+        journal(accountTransaction, account);
+        return String.valueOf(accountTransaction.getId());
     }
 
-    private void assertAccountNotOverdrawn(BigDecimal currentBalance, BigDecimal amount) {
-        final BigDecimal newBalance = currentBalance.add(amount);
-        if(newBalance.compareTo(BigDecimal.ZERO) < 0){
-            throw new ApiException("Operation cancelled due to insufficient funds.");
+    private void journal(AccountTransaction accountTransaction, Account account) {
+        if(transactionJournal != null){
+            transactionJournal.record(accountTransaction, account);
         }
     }
 
-    private BigDecimal calculateSignedAmount(TransactionRequestDTO transaction) {
-        BigDecimal localAmount = transaction.getAmount();
+    private void journalStatus(Account account) {
+        if(transactionJournal != null){
+            transactionJournal.recordStatus(account);
+        }
+    }
+
+    private TransactionView toView(AccountTransaction accountTransaction) {
+        return new TransactionView(accountTransaction.getId(), accountTransaction.getAmountMinor(), accountTransaction.getTransactionType(),
+                accountTransaction.getDescription(), accountTransaction.getTransactionDate(),
+                accountTransaction.getTransferId());
+    }
+
+    private void assertAccountNotOverdrawn(long currentBalance, long amount) {
+        assertNotOverdrawn(Money.add(currentBalance, amount));
+    }
+
+    private void assertNotOverdrawn(long newBalance) {
+        if(newBalance < 0){
+            throw new ApiException(ErrorReason.INSUFFICIENT_FUNDS, "Operation cancelled due to insufficient funds.");
+        }
+    }
+
+    private long calculateSignedAmount(TransactionRequestDTO transaction, long amount) {
         if(transaction.getType().equals(Constants.TRANSACTION_CREDIT)){
-            localAmount = transaction.getAmount().multiply(new BigDecimal(-1));
+            return Money.negate(amount);
         }
-        return localAmount;
+        return amount;
     }
 
     private void assertTypeNotNull(String type) {
         if(type == null){
-            throw new ApiException("Transaction Type is mandatory [DEBIT,CREDIT]");
+            throw new ApiException(ErrorReason.INVALID_TRANSACTION_TYPE, "Transaction Type is mandatory [DEBIT,CREDIT]");
         }
     }
 
     private void assertExistAccount(Optional<Account> accountOptional) {
         if(!accountOptional.isPresent()){
-            throw new ApiException(String.format("Account with provided id does not exist"));
+            throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, String.format("Account with provided id does not exist"));
         }
     }
 
@@ -285,18 +800,54 @@ public class AccountServiceImpl implements AccountService {
     }
 
     @Override
-    public  ResponseDTO makeWithdrawal(Long accountId, TransactionRequestDTO transaction) {
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO makeWithdrawal(Long accountId, TransactionRequestDTO transaction) {
+        return makeWithdrawal(accountId, transaction, null);
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO makeWithdrawal(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
         transaction.setType(Constants.TRANSACTION_CREDIT);
-        return processTransaction(accountId, transaction, WITHDRAWAL);
+        return processTransaction(accountId, transaction, WITHDRAWAL, idempotencyKey);
     }
 
     @Override
-    public  ResponseDTO processCheck(Long accountId, TransactionRequestDTO transaction) {
-        return processTransaction(accountId, transaction, CHECKS);
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO processCheck(Long accountId, TransactionRequestDTO transaction) {
+        return processCheck(accountId, transaction, null);
     }
 
     @Override
-    public  ResponseDTO processDebit(Long accountId, TransactionRequestDTO transaction) {
-        return processTransaction(accountId, transaction, DEBIT);
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO processCheck(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return processTransaction(accountId, transaction, CHECKS, idempotencyKey);
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO processDebit(Long accountId, TransactionRequestDTO transaction) {
+        return processDebit(accountId, transaction, null);
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseDTO processDebit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return processTransaction(accountId, transaction, DEBIT, idempotencyKey);
+    }
+
+    /**
+     * Position of the last transaction of a history page, the next page starts after it.
+     */
+    private static final class PageCursor {
+        private static final PageCursor FIRST_PAGE = new PageCursor(null, null);
+
+        private final LocalDateTime transactionDate;
+        private final Long transactionId;
+
+        private PageCursor(LocalDateTime transactionDate, Long transactionId) {
+            this.transactionDate = transactionDate;
+            this.transactionId = transactionId;
+        }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the {@link AccountService} operations.
+ * <p>
+ * Every operation is timed as {@code bank.account.operations} tagged with the operation
+ * and its outcome: {@code success}, {@code rejected} when it ended in an
+ * {@link ApiException}, or {@code error} for anything else. The timers publish a
+ * percentile histogram, so p99 can be computed across instances. Every rejection is also
+ * counted as {@code bank.account.rejections} tagged with its {@link ErrorReason}. All
+ * meters are registered up front so the hot path never looks them up by name.
+ */
+@Component
+public class AccountServiceMetrics {
+
+    public static final String OPERATIONS_METER = "bank.account.operations";
+    public static final String REJECTIONS_METER = "bank.account.rejections";
+
+    public enum Operation {
+        OPEN, CLOSE, DEPOSIT, WITHDRAWAL, DEBIT, CHECK, TRANSFER, BATCH, BALANCE, FIND, SEARCH, HISTORY;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final String SUCCESS = "success";
+    private static final String REJECTED = "rejected";
+    private static final String ERROR = "error";
+
+    private final Clock clock;
+    private final Map<Operation, Timer> successTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> rejectedTimers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Timer> errorTimers = new EnumMap<>(Operation.class);
+    private final Map<ErrorReason, Counter> rejections = new EnumMap<>(ErrorReason.class);
+
+    public AccountServiceMetrics(MeterRegistry registry) {
+        this.clock = registry.config().clock();
+        for (Operation operation : Operation.values()) {
+            successTimers.put(operation, timer(registry, operation, SUCCESS));
+            rejectedTimers.put(operation, timer(registry, operation, REJECTED));
+            errorTimers.put(operation, timer(registry, operation, ERROR));
+        }
+        for (ErrorReason reason : ErrorReason.values()) {
+            rejections.put(reason, Counter.builder(REJECTIONS_METER)
+                    .description("Operations rejected by the account service")
+                    .tag("reason", reason.tag())
+                    .register(registry));
+        }
+    }
+
+    public <T> T time(Operation operation, Supplier<T> work) {
+        final long start = clock.monotonicTime();
+        try {
+            final T result = work.get();
+            record(successTimers, operation, start);
+            return result;
+        } catch (ApiException e) {
+            record(rejectedTimers, operation, start);
+            countRejection(e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            record(errorTimers, operation, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a rejection that is reported to the caller without being thrown, such as a
+     * single failed item of a batch.
+     */
+    public void countRejection(ApiException e) {
+        rejections.get(e.getReason()).increment();
+    }
+
+    private void record(Map<Operation, Timer> timers, Operation operation, long start) {
+        timers.get(operation).record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(MeterRegistry registry, Operation operation, String outcome) {
+        return Timer.builder(OPERATIONS_METER)
+                .description("Latency of the account service operations")
+                .tag("operation", operation.tag())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.dto.*;
+import com.test.bank.accountservice.enums.TransactionType;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncAccountService {
+
+    CompletableFuture<AccountDetailDTO> findAccount(Long accountId);
+
+    CompletableFuture<AccountDTO> searchAccount(String number, String pin);
+
+    CompletableFuture<ResponseDTO> openAccount(AccountRequestDTO account);
+
+    CompletableFuture<ResponseDTO> closeAccount(long accountId);
+
+    CompletableFuture<ResponseDTO> makeDeposit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
+    CompletableFuture<ResponseDTO> makeWithdrawal(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
+    CompletableFuture<ResponseDTO> processCheck(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
+    CompletableFuture<ResponseDTO> processDebit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey);
+
+    CompletableFuture<ResponseDTO> transfer(Long accountId, TransferRequestDTO transfer, String idempotencyKey);
+
+    CompletableFuture<TransactionPageDTO> findTransactions(long accountId, TransactionType type, LocalDateTime from,
+                                                           LocalDateTime to, String cursor, Integer limit);
+
+    CompletableFuture<AccountBalanceDTO> getCurrentBalance(long accountId);
+
+    CompletableFuture<BatchTransactionResponseDTO> processBatch(BatchTransactionRequestDTO batch);
+
+}
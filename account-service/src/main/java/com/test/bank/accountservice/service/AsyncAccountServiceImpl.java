@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.dto.*;
+import com.test.bank.accountservice.enums.TransactionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs every {@link AccountService} call on the bounded database executor so request
+ * threads are released while the JPA round-trip is in flight.
+ */
+@Service
+public class AsyncAccountServiceImpl implements AsyncAccountService {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    @Qualifier("databaseExecutor")
+    private Executor databaseExecutor;
+
+    @Override
+    public CompletableFuture<AccountDetailDTO> findAccount(Long accountId) {
+        return supply(() -> accountService.findAccount(accountId));
+    }
+
+    @Override
+    public CompletableFuture<AccountDTO> searchAccount(String number, String pin) {
+        return supply(() -> accountService.searchAccount(number, pin));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> openAccount(AccountRequestDTO account) {
+        return supply(() -> accountService.openAccount(account));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> closeAccount(long accountId) {
+        return supply(() -> accountService.closeAccount(accountId));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> makeDeposit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return supply(() -> accountService.makeDeposit(accountId, transaction, idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> makeWithdrawal(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return supply(() -> accountService.makeWithdrawal(accountId, transaction, idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> processCheck(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return supply(() -> accountService.processCheck(accountId, transaction, idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> processDebit(Long accountId, TransactionRequestDTO transaction, String idempotencyKey) {
+        return supply(() -> accountService.processDebit(accountId, transaction, idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<ResponseDTO> transfer(Long accountId, TransferRequestDTO transfer, String idempotencyKey) {
+        return supply(() -> accountService.transfer(accountId, transfer, idempotencyKey));
+    }
+
+    @Override
+    public CompletableFuture<TransactionPageDTO> findTransactions(long accountId, TransactionType type, LocalDateTime from,
+                                                                  LocalDateTime to, String cursor, Integer limit) {
+        return supply(() -> accountService.findTransactions(accountId, type, from, to, cursor, limit));
+    }
+
+    @Override
+    public CompletableFuture<AccountBalanceDTO> getCurrentBalance(long accountId) {
+        return supply(() -> accountService.getCurrentBalance(accountId));
+    }
+
+    @Override
+    public CompletableFuture<BatchTransactionResponseDTO> processBatch(BatchTransactionRequestDTO batch) {
+        return supply(() -> accountService.processBatch(batch));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, databaseExecutor);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.model.Account;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-through cache of account balances, keyed by account id.
+ * <p>
+ * Every code path that mutates an {@link Account} calls {@link #update(Account)}, which
+ * publishes the new balance once the transaction commits. Entries carry the entity
+ * version, so a late publish from an older transaction never replaces a newer balance.
+ * The cache is split into segments, each one a bounded LRU map with its own lock.
+ * Hit, miss, put and eviction counts are exposed as the {@code cache.*} meters with
+ * {@code cache=balance}.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.balance-store.type", havingValue = "HEAP", matchIfMissing = true)
+public class BalanceCache implements BalanceStore, MeterBinder {
+
+    private final Segment[] segments;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BalanceCache(@Value("${bank.balance-cache.max-size:100000}") int maxSize,
+                        @Value("${bank.balance-cache.segments:16}") int segmentCount) {
+        int size = 1;
+        while (size < segmentCount) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        this.mask = size - 1;
+        final int segmentMaxSize = Math.max(1, (maxSize + size - 1) / size);
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment(segmentMaxSize);
+        }
+    }
+
+    @Override
+    public long getBalance(long accountId) {
+        final Segment segment = segmentFor(accountId);
+        final Entry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(accountId);
+        }
+        if (entry == null) {
+            misses.increment();
+            return MISSING;
+        }
+        hits.increment();
+        return entry.balanceMinor;
+    }
+
+    @Override
+    public long generation(long accountId) {
+        final Segment segment = segmentFor(accountId);
+        synchronized (segment) {
+            return segment.generation;
+        }
+    }
+
+    /**
+     * Caches a balance read from the database, unless a write reached the segment while
+     * it was being read. The status is not cached.
+     */
+    @Override
+    public void load(long accountId, long balanceMinor, long version, AccountStatus status, long generation) {
+        final Segment segment = segmentFor(accountId);
+        synchronized (segment) {
+            if (segment.generation == generation) {
+                put(segment, accountId, new Entry(balanceMinor, version));
+            }
+        }
+    }
+
+    @Override
+    public void update(Account account) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(account);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                write(account);
+            }
+        });
+    }
+
+    public void evict(long accountId) {
+        final Segment segment = segmentFor(accountId);
+        synchronized (segment) {
+            segment.generation++;
+            segment.entries.remove(accountId);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new Metrics(this).bindTo(registry);
+    }
+
+    private void write(Account account) {
+        final Segment segment = segmentFor(account.getId());
+        synchronized (segment) {
+            segment.generation++;
+            final Entry current = segment.entries.get(account.getId());
+            if (current == null || current.version <= account.getVersion()) {
+                put(segment, account.getId(), new Entry(account.getBalanceMinor(), account.getVersion()));
+            }
+        }
+    }
+
+    private void put(Segment segment, long accountId, Entry entry) {
+        segment.entries.put(accountId, entry);
+        puts.increment();
+    }
+
+    private Segment segmentFor(long accountId) {
+        final int hash = Long.hashCode(accountId);
+        return segments[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private final class Segment {
+        private final Map<Long, Entry> entries;
+        private long generation;
+
+        private Segment(int maxSize) {
+            this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static final class Entry {
+        private final long balanceMinor;
+        private final long version;
+
+        private Entry(long balanceMinor, long version) {
+            this.balanceMinor = balanceMinor;
+            this.version = version;
+        }
+    }
+
+    private static final class Metrics extends CacheMeterBinder {
+        private final BalanceCache cache;
+
+        private Metrics(BalanceCache cache) {
+            super(cache, "balance", Tags.empty());
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long size() {
+            return cache.size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return cache.hits.sum();
+        }
+
+        @Override
+        protected Long missCount() {
+            return cache.misses.sum();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return cache.evictions.sum();
+        }
+
+        @Override
+        protected long putCount() {
+            return cache.puts.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.model.Account;
+
+/**
+ * Committed balances kept in memory, read by {@code getCurrentBalance} and, in STRIPED
+ * mode, by the overdraft check of a posting to reject uncovered debits before the account
+ * is read; a debit that passes is checked again against the account. Selected with
+ * {@code bank.balance-store.type}: HEAP for the LRU {@link BalanceCache}, OFF_HEAP for the
+ * {@link OffHeapBalanceStore}.
+ * <p>
+ * Every value carries the account version it was read or committed with, and a store
+ * never replaces a value with an older version.
+ */
+public interface BalanceStore {
+
+    /**
+     * Returned by {@link #getBalance(long)} when the account has to be read from the database.
+     */
+    long MISSING = Long.MIN_VALUE;
+
+    /**
+     * @return the balance in minor units, or {@link #MISSING}
+     */
+    long getBalance(long accountId);
+
+    /**
+     * Marks the start of a database read for a missing account. The value read must be
+     * handed to {@link #load} together with the returned generation.
+     */
+    long generation(long accountId);
+
+    /**
+     * Stores a balance read from the database, unless the account was written since the
+     * given generation was taken.
+     */
+    void load(long accountId, long balanceMinor, long version, AccountStatus status, long generation);
+
+    default void load(Account account, long generation) {
+        load(account.getId(), account.getBalanceMinor(), account.getVersion(), account.getStatus(), generation);
+    }
+
+    /**
+     * Publishes the balance of a mutated account. Inside a transaction the store is only
+     * updated after commit, so rolled back changes are never visible.
+     */
+    void update(Account account);
+
+    long size();
+}
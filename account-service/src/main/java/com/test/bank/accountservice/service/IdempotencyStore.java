@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import com.test.bank.accountservice.model.IdempotencyRecord;
+import com.test.bank.accountservice.repository.IdempotencyRecordRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the outcome of money-moving requests by their {@code Idempotency-Key}.
+ * Recent keys are answered from a bounded LRU cache with a time to live; older ones
+ * fall back to the {@code idempotency_record} table, which is written in the same
+ * transaction as the posting itself.
+ */
+@Component
+@Log4j2
+public class IdempotencyStore {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private final Map<String, CachedRecord> cache;
+    private final long cacheTtlMillis;
+
+    @Value("${bank.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    public IdempotencyStore(@Value("${bank.idempotency.cache-size:10000}") int cacheSize,
+                            @Value("${bank.idempotency.cache-ttl-minutes:60}") long cacheTtlMinutes) {
+        this.cacheTtlMillis = TimeUnit.MINUTES.toMillis(cacheTtlMinutes);
+        this.cache = new LinkedHashMap<String, CachedRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRecord> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Looks up a previous posting made with the given key and checks that it was made
+     * for the same account and operation.
+     *
+     * @return the transaction id of the original posting, if any
+     */
+    public Optional<String> findTransactionId(String key, long accountId, TransactionType operation) {
+        assertValidKey(key);
+
+        CachedRecord cached = getCached(key);
+        if (cached == null) {
+            final Optional<IdempotencyRecord> stored = idempotencyRecordRepository.findById(key);
+            if (!stored.isPresent()) {
+                return Optional.empty();
+            }
+            cached = new CachedRecord(stored.get().getAccountId(), stored.get().getOperation(), stored.get().getTransactionId());
+            putCached(key, cached);
+        }
+
+        if (cached.accountId != accountId || cached.operation != operation) {
+            throw new ApiException(ErrorReason.INVALID_IDEMPOTENCY_KEY, "Idempotency key was already used for a different operation.");
+        }
+        return Optional.of(cached.transactionId);
+    }
+
+    /**
+     * Stores the outcome of a posting. Must be called inside the posting transaction;
+     * the cache is only updated once that transaction commits. A key stored concurrently
+     * fails the commit with a {@code DataIntegrityViolationException}, rolling the posting back.
+     */
+    public void record(String key, long accountId, TransactionType operation, String transactionId) {
+        final IdempotencyRecord record = new IdempotencyRecord();
+        record.setKey(key);
+        record.setAccountId(accountId);
+        record.setOperation(operation);
+        record.setTransactionId(transactionId);
+        record.setCreatedDate(LocalDateTime.now());
+        idempotencyRecordRepository.save(record);
+
+        final CachedRecord cached = new CachedRecord(accountId, operation, transactionId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    putCached(key, cached);
+                }
+            });
+        } else {
+            putCached(key, cached);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bank.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        final int deleted = idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            log.info("Purged {} expired idempotency records", deleted);
+        }
+    }
+
+    private void assertValidKey(String key) {
+        if (key.trim().isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new ApiException(ErrorReason.INVALID_IDEMPOTENCY_KEY, String.format("Idempotency key must have between 1 and %d characters.", MAX_KEY_LENGTH));
+        }
+    }
+
+    private CachedRecord getCached(String key) {
+        synchronized (cache) {
+            final CachedRecord cached = cache.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.cachedAt > cacheTtlMillis) {
+                cache.remove(key);
+                return null;
+            }
+            return cached;
+        }
+    }
+
+    private void putCached(String key, CachedRecord record) {
+        synchronized (cache) {
+            cache.put(key, record);
+        }
+    }
+
+    private static final class CachedRecord {
+        private final long accountId;
+        private final TransactionType operation;
+        private final String transactionId;
+        private final long cachedAt = System.currentTimeMillis();
+
+        private CachedRecord(long accountId, TransactionType operation, String transactionId) {
+            this.accountId = accountId;
+            this.operation = operation;
+            this.transactionId = transactionId;
+        }
+    }
+}
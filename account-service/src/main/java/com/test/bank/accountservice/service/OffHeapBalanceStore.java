@@ -0,0 +1,402 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.model.Account;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Balance store for very large account counts, kept outside the Java heap so it adds
+ * nothing to the work of the garbage collector whatever the number of accounts.
+ * <p>
+ * The table is open-addressed with linear probing over fixed 32 byte slots, held in
+ * direct buffers of at most 1 GB each:
+ * <pre>
+ *  0 account id (0 for a free slot)   8 balance in minor units   16 account version
+ * 24 status ordinal + 1 (int)        28 unused
+ * </pre>
+ * Slots are guarded by a fixed set of {@link StampedLock stamped locks}, one per slot
+ * index modulo their number. A slot is claimed under its write lock and never released,
+ * accounts are not deleted. Readers read optimistically and take the read lock when a
+ * write overlapped, so they never see a balance with another version's status and never
+ * spin. Committed changes are published with a compare-and-set against the version they
+ * started from, and values are only ever replaced by newer versions, which is enough to
+ * keep stale database reads out since nothing is evicted; the generations of
+ * {@link BalanceStore} are unused.
+ * <p>
+ * The table holds at most {@code bank.balance-store.off-heap.max-accounts}, sized so that
+ * it is never more than three quarters full. Accounts beyond that are read from the
+ * database. Direct buffers count against {@code -XX:MaxDirectMemorySize} and are freed
+ * by the JVM once the store is garbage collected.
+ */
+@Component
+@ConditionalOnProperty(name = "bank.balance-store.type", havingValue = "OFF_HEAP")
+@Log4j2
+public class OffHeapBalanceStore implements BalanceStore, MeterBinder {
+
+    private static final int SLOT_SIZE = 32;
+    private static final int PAGE_SHIFT = 25;
+    private static final int KEY = 0;
+    private static final int BALANCE = 8;
+    private static final int VERSION = 16;
+    private static final int STATUS = 24;
+    private static final int MAX_LOCKS = 4096;
+    private static final AccountStatus[] STATUSES = AccountStatus.values();
+
+    private final ByteBuffer[] pages;
+    private final StampedLock[] locks;
+    private final long mask;
+    private final long maxAccounts;
+    private final AtomicLong accounts = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public OffHeapBalanceStore(@Value("${bank.balance-store.off-heap.max-accounts:1000000}") long maxAccounts) {
+        long slots = 1;
+        while (slots < maxAccounts + maxAccounts / 3 + 1) {
+            slots <<= 1;
+        }
+        this.maxAccounts = maxAccounts;
+        this.mask = slots - 1;
+        final long pageSlots = Math.min(slots, 1L << PAGE_SHIFT);
+        this.pages = new ByteBuffer[(int) (slots / pageSlots)];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = ByteBuffer.allocateDirect((int) (pageSlots * SLOT_SIZE)).order(ByteOrder.nativeOrder());
+        }
+        this.locks = new StampedLock[(int) Math.min(slots, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+        log.info("Allocated {} MB off heap for the balances of up to {} accounts", getAllocatedBytes() >> 20, maxAccounts);
+    }
+
+    @Override
+    public long getBalance(long accountId) {
+        final long index = find(accountId, false);
+        if (index >= 0) {
+            final ByteBuffer page = page(index);
+            final int offset = offset(index);
+            final StampedLock lock = lock(index);
+            long stamp = lock.tryOptimisticRead();
+            int status = page.getInt(offset + STATUS);
+            long balanceMinor = page.getLong(offset + BALANCE);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    status = page.getInt(offset + STATUS);
+                    balanceMinor = page.getLong(offset + BALANCE);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (status != 0) {
+                hits.increment();
+                return balanceMinor;
+            }
+        }
+        misses.increment();
+        return MISSING;
+    }
+
+    /**
+     * @return the status stored for the account, or {@code null} when it is not stored
+     */
+    public AccountStatus getStatus(long accountId) {
+        final long index = find(accountId, false);
+        return index >= 0 ? statusOf(read(index, STATUS)) : null;
+    }
+
+    /**
+     * @return the version stored for the account, or {@code -1} when it is not stored
+     */
+    public long getVersion(long accountId) {
+        final long index = find(accountId, false);
+        if (index < 0 || read(index, STATUS) == 0) {
+            return -1;
+        }
+        return read(index, VERSION);
+    }
+
+    /**
+     * Replaces the values of the account if it is stored with the expected version.
+     */
+    public boolean compareAndSet(long accountId, long expectedVersion, long balanceMinor, long version, AccountStatus status) {
+        final long index = find(accountId, false);
+        if (index < 0) {
+            return false;
+        }
+        final ByteBuffer page = page(index);
+        final int offset = offset(index);
+        final StampedLock lock = lock(index);
+        final long stamp = lock.writeLock();
+        try {
+            if (page.getInt(offset + STATUS) == 0 || page.getLong(offset + VERSION) != expectedVersion) {
+                return false;
+            }
+            write(page, offset, balanceMinor, version, status);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        puts.increment();
+        return true;
+    }
+
+    /**
+     * Stores the values unless the account is stored with a newer version.
+     *
+     * @return {@code false} when the table is full or a newer version is stored
+     */
+    public boolean putIfNewer(long accountId, long balanceMinor, long version, AccountStatus status) {
+        final long index = find(accountId, true);
+        if (index < 0) {
+            return false;
+        }
+        final ByteBuffer page = page(index);
+        final int offset = offset(index);
+        final StampedLock lock = lock(index);
+        final long stamp = lock.writeLock();
+        try {
+            if (page.getInt(offset + STATUS) != 0 && page.getLong(offset + VERSION) > version) {
+                return false;
+            }
+            write(page, offset, balanceMinor, version, status);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        puts.increment();
+        return true;
+    }
+
+    @Override
+    public long generation(long accountId) {
+        return 0;
+    }
+
+    @Override
+    public void load(long accountId, long balanceMinor, long version, AccountStatus status, long generation) {
+        putIfNewer(accountId, balanceMinor, version, status);
+    }
+
+    @Override
+    public void update(Account account) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(account);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                put(account);
+            }
+        });
+    }
+
+    @Override
+    public long size() {
+        return accounts.get();
+    }
+
+    public long getAllocatedBytes() {
+        return (mask + 1) * SLOT_SIZE;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new Metrics(this).bindTo(registry);
+        Gauge.builder("bank.balance-store.off-heap.bytes", this, OffHeapBalanceStore::getAllocatedBytes)
+                .description("Memory allocated outside the heap for account balances")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("bank.balance-store.off-heap.rejected", rejected, LongAdder::sum)
+                .description("Accounts that did not fit in the off-heap balance table")
+                .register(registry);
+    }
+
+    /**
+     * A committed change moves the account one version past the one stored, anything else
+     * (a new account, or publishes arriving out of order) falls back to the version check.
+     */
+    private void put(Account account) {
+        if (!compareAndSet(account.getId(), account.getVersion() - 1, account.getBalanceMinor(), account.getVersion(),
+                account.getStatus())) {
+            putIfNewer(account.getId(), account.getBalanceMinor(), account.getVersion(), account.getStatus());
+        }
+    }
+
+    /**
+     * @return the slot index of the account, or -1 when it is not stored and can not or
+     * should not be claimed
+     */
+    private long find(long accountId, boolean claim) {
+        if (accountId == 0) {
+            return -1;
+        }
+        long index = mix(accountId) & mask;
+        while (true) {
+            long key = read(index, KEY);
+            if (key == 0 && claim) {
+                key = claim(index, accountId);
+                if (key == 0) {
+                    return -1;
+                }
+            }
+            if (key == accountId) {
+                return index;
+            }
+            if (key == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Writes the account id in the slot unless another account took it first.
+     *
+     * @return the account id now in the slot, or 0 when the table is full
+     */
+    private long claim(long index, long accountId) {
+        final ByteBuffer page = page(index);
+        final int offset = offset(index);
+        final StampedLock lock = lock(index);
+        final long stamp = lock.writeLock();
+        try {
+            final long key = page.getLong(offset + KEY);
+            if (key != 0) {
+                return key;
+            }
+            if (accounts.incrementAndGet() > maxAccounts) {
+                accounts.decrementAndGet();
+                rejected.increment();
+                return 0;
+            }
+            page.putLong(offset + KEY, accountId);
+            return accountId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static void write(ByteBuffer page, int offset, long balanceMinor, long version, AccountStatus status) {
+        page.putLong(offset + BALANCE, balanceMinor);
+        page.putLong(offset + VERSION, version);
+        page.putInt(offset + STATUS, status.ordinal() + 1);
+    }
+
+    private long read(long index, int field) {
+        final ByteBuffer page = page(index);
+        final int offset = offset(index) + field;
+        final StampedLock lock = lock(index);
+        long stamp = lock.tryOptimisticRead();
+        long value = field == STATUS ? page.getInt(offset) : page.getLong(offset);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = field == STATUS ? page.getInt(offset) : page.getLong(offset);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    private ByteBuffer page(long index) {
+        return pages[(int) (index >>> PAGE_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & ((1L << PAGE_SHIFT) - 1)) * SLOT_SIZE;
+    }
+
+    private StampedLock lock(long index) {
+        return locks[(int) (index & (locks.length - 1))];
+    }
+
+    private static AccountStatus statusOf(long stored) {
+        return stored > 0 && stored <= STATUSES.length ? STATUSES[(int) stored - 1] : null;
+    }
+
+    /**
+     * Spreads sequential account ids over the table (the MurmurHash3 finalizer).
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Metrics extends CacheMeterBinder {
+        private final OffHeapBalanceStore store;
+
+        private Metrics(OffHeapBalanceStore store) {
+            super(store, "balance", Tags.empty());
+            this.store = store;
+        }
+
+        @Override
+        protected Long size() {
+            return store.size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return store.hits.sum();
+        }
+
+        @Override
+        protected Long missCount() {
+            return store.misses.sum();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return 0L;
+        }
+
+        @Override
+        protected long putCount() {
+            return store.puts.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        }
+    }
+}
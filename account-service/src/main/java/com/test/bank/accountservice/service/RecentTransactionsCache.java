@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.test.bank.accountservice.repository.projection.TransactionView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounded ring buffer of the most recent transactions of every account.
+ * <p>
+ * A ring is hydrated from the database the first time an account is read and is then
+ * kept current by {@link #append(long, TransactionView)} after each commit. Rings are
+ * held through soft references, so the JVM drops them under memory pressure and they
+ * are simply hydrated again on the next read. Appends bump a striped generation
+ * counter; a hydration that overlaps an append to its stripe is not installed, so a
+ * ring never misses a committed transaction. A hydration that already read a committed
+ * transaction can still be installed before its append runs, so appends skip
+ * transactions their ring already holds.
+ */
+@Component
+public class RecentTransactionsCache {
+
+    private static final int STRIPES = 64;
+
+    private final int size;
+    private final ConcurrentHashMap<Long, RingReference> rings = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Ring> clearedRings = new ReferenceQueue<>();
+    private final Object[] locks = new Object[STRIPES];
+    private final long[] generations = new long[STRIPES];
+
+    public RecentTransactionsCache(@Value("${bank.transaction.recent.size:5}") int size) {
+        this.size = size;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the most recent transactions of the account, newest first
+     */
+    public List<TransactionView> recent(long accountId, Supplier<List<TransactionView>> loader) {
+        purgeCleared();
+        final int stripe = stripe(accountId);
+        final Object lock = locks[stripe];
+
+        final long generation;
+        synchronized (lock) {
+            final Ring ring = ring(accountId);
+            if (ring != null) {
+                return ring.newestFirst();
+            }
+            generation = generations[stripe];
+        }
+
+        final List<TransactionView> loaded = loader.get();
+        synchronized (lock) {
+            if (generations[stripe] == generation) {
+                final Ring ring = new Ring(size);
+                for (int i = loaded.size() - 1; i >= 0; i--) {
+                    ring.add(loaded.get(i));
+                }
+                rings.put(accountId, new RingReference(accountId, ring, clearedRings));
+            }
+        }
+        return Collections.unmodifiableList(loaded);
+    }
+
+    /**
+     * Adds a posted transaction to the ring of its account once the current transaction
+     * commits. Accounts without a ring are left alone, they are hydrated on first read.
+     */
+    public void append(long accountId, TransactionView transaction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(accountId, transaction);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                add(accountId, transaction);
+            }
+        });
+    }
+
+    private void add(long accountId, TransactionView transaction) {
+        final int stripe = stripe(accountId);
+        synchronized (locks[stripe]) {
+            generations[stripe]++;
+            final Ring ring = ring(accountId);
+            if (ring != null && !ring.contains(transaction.getId())) {
+                ring.add(transaction);
+            }
+        }
+    }
+
+    private Ring ring(long accountId) {
+        final RingReference reference = rings.get(accountId);
+        return reference != null ? reference.get() : null;
+    }
+
+    private void purgeCleared() {
+        RingReference reference;
+        while ((reference = (RingReference) clearedRings.poll()) != null) {
+            rings.remove(reference.accountId, reference);
+        }
+    }
+
+    private static int stripe(long accountId) {
+        final int hash = Long.hashCode(accountId);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class RingReference extends SoftReference<Ring> {
+        private final long accountId;
+
+        private RingReference(long accountId, Ring ring, ReferenceQueue<Ring> queue) {
+            super(ring, queue);
+            this.accountId = accountId;
+        }
+    }
+
+    private static final class Ring {
+        private final TransactionView[] entries;
+        private int next;
+        private int count;
+
+        private Ring(int size) {
+            this.entries = new TransactionView[size];
+        }
+
+        private void add(TransactionView transaction) {
+            if (entries.length == 0) {
+                return;
+            }
+            entries[next] = transaction;
+            next = (next + 1) % entries.length;
+            count = Math.min(count + 1, entries.length);
+        }
+
+        private boolean contains(long transactionId) {
+            for (int i = 1; i <= count; i++) {
+                if (entries[(next - i + entries.length) % entries.length].getId() == transactionId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<TransactionView> newestFirst() {
+            final List<TransactionView> result = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                result.add(entries[(next - i + entries.length) % entries.length]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.bank.accountservice.enums.StatementFormat;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import com.test.bank.accountservice.model.AccountTransaction;
+import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.repository.AccountTransactionRepository;
+import com.test.bank.accountservice.util.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Streams the full transaction history of an account straight from a database cursor
+ * to the response. Rows are read in a read-only transaction with a JDBC fetch size and
+ * every entity is detached once written, so memory does not depend on the history size.
+ * Each running export holds a pooled connection, so only a few may run at once.
+ */
+@Service
+public class StatementExportService {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String CSV_HEADER = "transactionId,transactionDate,transactionType,amount,description,transferId";
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountTransactionRepository accountTransactionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Semaphore exportPermits;
+
+    public StatementExportService(PlatformTransactionManager transactionManager,
+                                  @Value("${bank.statement.max-concurrent-exports:2}") int maxConcurrentExports) {
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.exportPermits = new Semaphore(maxConcurrentExports);
+    }
+
+    public void assertAccountExists(long accountId) {
+        if(!accountRepository.existsById(accountId)){
+            throw new ApiException(ErrorReason.ACCOUNT_NOT_FOUND, "Account does not exist");
+        }
+    }
+
+    /**
+     * Writes the statement to the given stream. Fails before writing anything when the
+     * maximum number of concurrent exports is already running.
+     */
+    public void export(long accountId, StatementFormat format, OutputStream outputStream) throws IOException {
+        if(!exportPermits.tryAcquire()){
+            throw new RejectedExecutionException("Too many statement exports in progress");
+        }
+        try {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            readOnlyTransactionTemplate.execute(status -> {
+                try (Stream<AccountTransaction> transactions = accountTransactionRepository.streamByAccountId(accountId)) {
+                    if(format == StatementFormat.CSV){
+                        writeCsv(transactions, writer);
+                    } else {
+                        writeNdjson(transactions, writer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+            writer.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    private void writeNdjson(Stream<AccountTransaction> transactions, Writer writer) throws IOException {
+        final JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        final Iterable<AccountTransaction> rows = transactions::iterator;
+        for (AccountTransaction transaction : rows) {
+            generator.writeStartObject();
+            generator.writeStringField("transactionId", String.valueOf(transaction.getId()));
+            generator.writeStringField("transactionDate", String.valueOf(transaction.getTransactionDate()));
+            generator.writeStringField("transactionType", transaction.getTransactionType().toString());
+            generator.writeFieldName("amount");
+            generator.writeNumber(Money.toBigDecimal(transaction.getAmountMinor()));
+            generator.writeStringField("description", transaction.getDescription());
+            if(transaction.getTransferId() != null){
+                generator.writeStringField("transferId", transaction.getTransferId());
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            entityManager.detach(transaction);
+        }
+        generator.flush();
+    }
+
+    private void writeCsv(Stream<AccountTransaction> transactions, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        final Iterable<AccountTransaction> rows = transactions::iterator;
+        for (AccountTransaction transaction : rows) {
+            writer.write(String.valueOf(transaction.getId()));
+            writer.write(',');
+            writer.write(String.valueOf(transaction.getTransactionDate()));
+            writer.write(',');
+            writer.write(transaction.getTransactionType().toString());
+            writer.write(',');
+            writer.write(Money.toBigDecimal(transaction.getAmountMinor()).toPlainString());
+            writer.write(',');
+            writeCsvText(writer, transaction.getDescription());
+            writer.write(',');
+            writeCsvText(writer, transaction.getTransferId());
+            writer.write('\n');
+            entityManager.detach(transaction);
+        }
+    }
+
+    private void writeCsvText(Writer writer, String value) throws IOException {
+        if(value == null){
+            return;
+        }
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0){
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
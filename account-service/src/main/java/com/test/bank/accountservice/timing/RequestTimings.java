@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.timing;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time spent by one request in each phase of its processing.
+ * <p>
+ * The timings of a request are bound to the thread working on it, and carried over to the
+ * database executor and the ledger shards, so hot-path code only calls
+ * {@link #start()} and {@link #stop(Phase, long)}. Both are a thread-local read when no
+ * request is being timed. A phase entered several times, such as the two loads of a
+ * transfer, accumulates its durations.
+ */
+public final class RequestTimings {
+
+    public enum Phase {
+        /** Waiting for a database executor thread. */
+        QUEUE,
+        /** Waiting for the account lock, or for the ledger shard to pick the posting up. */
+        LOCK,
+        /** Reading accounts from the database. */
+        LOAD,
+        /** Applying the changes to the persistence context. */
+        SAVE,
+        /** Flushing and committing the database transaction. */
+        COMMIT,
+        /** Writing the response body. */
+        SERIALIZE;
+
+        private final String metricName = name().toLowerCase(Locale.ROOT);
+
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the timings to the current thread.
+     *
+     * @return the timings previously bound, to be handed back to {@link #restore}
+     */
+    public static RequestTimings bind(RequestTimings timings) {
+        final RequestTimings previous = CURRENT.get();
+        CURRENT.set(timings);
+        return previous;
+    }
+
+    public static void restore(RequestTimings previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return the start of a phase, to be handed to {@link #stop(Phase, long)}
+     */
+    public static long start() {
+        return CURRENT.get() == null ? NOT_TIMED : System.nanoTime();
+    }
+
+    public static void stop(Phase phase, long start) {
+        if (start == NOT_TIMED) {
+            return;
+        }
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Times the commit of the current database transaction, from the moment it starts
+     * flushing until it completes.
+     */
+    public static void timeCommit() {
+        final RequestTimings timings = CURRENT.get();
+        if (timings == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            private long commitStart = NOT_TIMED;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitStart = System.nanoTime();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (commitStart != NOT_TIMED) {
+                    timings.add(Phase.COMMIT, System.nanoTime() - commitStart);
+                }
+            }
+        });
+    }
+
+    /**
+     * Carries the timings of the submitting thread over to the thread running the task,
+     * recording the time the task waited in the queue. Meant to be used as a
+     * {@link org.springframework.core.task.TaskDecorator}.
+     */
+    public static Runnable propagate(Runnable task) {
+        final RequestTimings timings = CURRENT.get();
+        if (timings == null) {
+            return task;
+        }
+        final long submitted = System.nanoTime();
+        return () -> {
+            timings.add(Phase.QUEUE, System.nanoTime() - submitted);
+            final RequestTimings previous = bind(timings);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public void add(Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Formats the phases entered so far and the given total as a {@code Server-Timing}
+     * header value, with durations in milliseconds.
+     */
+    public String toServerTiming(long totalNanos) {
+        final StringBuilder value = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            final long nanos = getNanos(phase);
+            if (nanos > 0) {
+                appendMetric(value, phase.metricName(), nanos).append(", ");
+            }
+        }
+        return appendMetric(value, "total", totalNanos).toString();
+    }
+
+    private static StringBuilder appendMetric(StringBuilder value, String name, long nanos) {
+        // Three decimals of a millisecond, without the cost of String.format.
+        final long micros = nanos / 1000;
+        value.append(name).append(";dur=").append(micros / 1000).append('.');
+        final long fraction = micros % 1000;
+        if (fraction < 100) {
+            value.append('0');
+        }
+        if (fraction < 10) {
+            value.append('0');
+        }
+        return value.append(fraction);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.timing;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every request and returns the {@link RequestTimings} breakdown in a
+ * {@code Server-Timing} response header.
+ * <p>
+ * The body is buffered so the header can still be set once it has been serialized. The
+ * timings survive the async dispatch of {@code CompletableFuture} handlers as a request
+ * attribute. A sample of the requests slower than the configured threshold is logged with
+ * the same breakdown. Streamed responses must be excluded, buffering them would hold the
+ * whole body in memory.
+ */
+@Log4j2
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String TIMINGS_ATTRIBUTE = ServerTimingFilter.class.getName() + ".TIMINGS";
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+    private final List<String> excludedPaths;
+    private final long slowRequestNanos;
+    private final double slowRequestSampleRate;
+
+    public ServerTimingFilter(List<String> excludedPaths, long slowRequestMs, double slowRequestSampleRate) {
+        this.excludedPaths = excludedPaths;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMs);
+        this.slowRequestSampleRate = slowRequestSampleRate;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        final String path = urlPathHelper.getPathWithinApplication(request);
+        for (String excludedPath : excludedPaths) {
+            if (pathMatcher.match(excludedPath, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTimings timings = (RequestTimings) request.getAttribute(TIMINGS_ATTRIBUTE);
+        if (timings == null) {
+            timings = new RequestTimings();
+            request.setAttribute(TIMINGS_ATTRIBUTE, timings);
+        }
+        HttpServletResponse responseToUse = response;
+        if (!isAsyncDispatch(request) && !(response instanceof ContentCachingResponseWrapper)) {
+            responseToUse = new ContentCachingResponseWrapper(response);
+        }
+
+        final RequestTimings previous = RequestTimings.bind(timings);
+        try {
+            filterChain.doFilter(request, responseToUse);
+        } finally {
+            RequestTimings.restore(previous);
+        }
+
+        if (!isAsyncStarted(request)) {
+            complete(request, responseToUse, timings);
+        }
+    }
+
+    private void complete(HttpServletRequest request, HttpServletResponse response, RequestTimings timings)
+            throws IOException {
+        final ContentCachingResponseWrapper responseWrapper =
+                WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+        final long totalNanos = timings.getElapsedNanos();
+        final String serverTiming = timings.toServerTiming(totalNanos);
+        if (responseWrapper != null) {
+            responseWrapper.setHeader(SERVER_TIMING_HEADER, serverTiming);
+            responseWrapper.copyBodyToResponse();
+        }
+
+        if (totalNanos >= slowRequestNanos && ThreadLocalRandom.current().nextDouble() < slowRequestSampleRate) {
+            log.warn("Slow request {} {} answered {} in {} ms: {}", request.getMethod(), request.getRequestURI(),
+                    response.getStatus(), TimeUnit.NANOSECONDS.toMillis(totalNanos), serverTiming);
+        }
+    }
+}
@@ -17,43 +17,58 @@ package com.test.bank.accountservice.util;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Random;
 import java.util.regex.Pattern;
 
 public class GeneralUtils {
 
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm:ss");
+    private static final Pattern PIN_PATTERN = Pattern.compile("[1-9]{4}");
+
     private GeneralUtils(){}
-    private static Random random = new Random();
 
-    public static String generateAccountNumber(){
-        long time = System.nanoTime();
-        double random = Math.random() * 100;
-        long mix = (long)(time * random);
-        return String.valueOf(mix).substring(0,Constants.MAX_DIGITS_ACCOUNT_NUMBER);
+    /**
+     * Appends the Luhn check digit to the given digits, so a mistyped digit or most swaps of
+     * two adjacent digits in an account number are detected without a database lookup.
+     */
+    public static String appendLuhnCheckDigit(String digits){
+        final int sum = luhnSum(digits, true);
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    public static boolean hasValidLuhnCheckDigit(String number){
+        if(number == null || number.isEmpty() || !number.chars().allMatch(Character::isDigit)){
+            return false;
+        }
+        return luhnSum(number, false) % 10 == 0;
+    }
+
+    private static int luhnSum(String digits, boolean doubleLast){
+        int sum = 0;
+        boolean doubled = doubleLast;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if(doubled){
+                digit *= 2;
+                if(digit > 9){
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return sum;
     }
 
     public static String formatDateTimeToString(LocalDateTime dateTime){
-        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm:ss");
         String formattedDate = "";
         if(dateTime != null){
-            formattedDate = dateTime.format(formatter);
+            formattedDate = dateTime.format(DATE_TIME_FORMATTER);
         }
 
         return formattedDate;
     }
 
     public static boolean isPinNumericNonZero(String strNum) {
-        try {
-            Long.valueOf(strNum);
-            Pattern digitPattern = Pattern.compile("[1-9]{4}");
-            return digitPattern.matcher(strNum).matches();
-        } catch (NumberFormatException | NullPointerException nfe) {
-            return false;
-        }
+        return strNum != null && PIN_PATTERN.matcher(strNum).matches();
     }
-
-
-
-
-
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice.util;
+
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money arithmetic over a {@code long} count of minor units (cents).
+ * <p>
+ * Balances and amounts are kept as primitives inside the service and the entities, so
+ * posting a transaction does not allocate; {@link BigDecimal} is only used when
+ * converting at the DTO boundary. Every operation fails instead of silently overflowing.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+
+    private Money(){}
+
+    public static long toMinorUnits(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ApiException(ErrorReason.INVALID_AMOUNT,
+                    String.format("Amount %s can not be represented with %d decimal places.", amount.toPlainString(), SCALE));
+        }
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public static long add(long minorUnits, long otherMinorUnits) {
+        final long result = minorUnits + otherMinorUnits;
+        if (((minorUnits ^ result) & (otherMinorUnits ^ result)) < 0) {
+            throw new ApiException(ErrorReason.AMOUNT_OVERFLOW, "Operation exceeds the maximum supported amount.");
+        }
+        return result;
+    }
+
+    public static long subtract(long minorUnits, long otherMinorUnits) {
+        final long result = minorUnits - otherMinorUnits;
+        if (((minorUnits ^ otherMinorUnits) & (minorUnits ^ result)) < 0) {
+            throw new ApiException(ErrorReason.AMOUNT_OVERFLOW, "Operation exceeds the maximum supported amount.");
+        }
+        return result;
+    }
+
+    public static long negate(long minorUnits) {
+        if (minorUnits == Long.MIN_VALUE) {
+            throw new ApiException(ErrorReason.AMOUNT_OVERFLOW, "Operation exceeds the maximum supported amount.");
+        }
+        return -minorUnits;
+    }
+}
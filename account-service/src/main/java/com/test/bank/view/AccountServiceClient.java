@@ -19,31 +19,71 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.test.bank.accountservice.dto.*;
 import com.test.bank.view.exception.ClientException;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class AccountServiceClient {
 
-    private static final String FIND_ACCOUNT_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts";
-    private static final String FIND_ACCOUNT_BY_ID_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts/{id}";
-    private static final String GET_CURRENT_BALANCE_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts/{id}/balance";
-    private static final String OPEN_ACCOUNT_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts";
-    private static final String CLOSE_ACCOUNT_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts/{id}/close";
-    private static final String MAKE_DEPOSIT_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts/{id}/deposit";
-    private static final String MAKE_WITHDRAWAL_ENDPOINT_URL = "http://localhost:8080/api/v1/accounts/{id}/withdrawal";
+    /**
+     * System property overriding the address of the account service, for example
+     * {@code -Dbank.service.url=http://10.0.0.5:8080/api}.
+     */
+    public static final String SERVICE_URL_PROPERTY = "bank.service.url";
+    private static final String DEFAULT_SERVICE_URL = "http://localhost:8080/api";
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
     private static RestTemplate restTemplate = new RestTemplate();
     private static ObjectMapper objectMapper = new ObjectMapper();
+    private static final ThreadLocal<Map<String, Double>> lastServerTiming =
+            ThreadLocal.withInitial(Collections::emptyMap);
+
+    static {
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            lastServerTiming.remove();
+            final ClientHttpResponse response = execution.execute(request, body);
+            lastServerTiming.set(parseServerTiming(response.getHeaders().getFirst(SERVER_TIMING_HEADER)));
+            return response;
+        });
+    }
+
+    private final String findAccountEndpointUrl;
+    private final String findAccountByIdEndpointUrl;
+    private final String getCurrentBalanceEndpointUrl;
+    private final String openAccountEndpointUrl;
+    private final String closeAccountEndpointUrl;
+    private final String makeDepositEndpointUrl;
+    private final String makeWithdrawalEndpointUrl;
+    private final String transferEndpointUrl;
+
+    public AccountServiceClient() {
+        this(System.getProperty(SERVICE_URL_PROPERTY, DEFAULT_SERVICE_URL));
+    }
+
+    public AccountServiceClient(String serviceUrl) {
+        final String accountsUrl = serviceUrl.replaceAll("/+$", "") + "/v1/accounts";
+        this.findAccountEndpointUrl = accountsUrl;
+        this.findAccountByIdEndpointUrl = accountsUrl + "/{id}";
+        this.getCurrentBalanceEndpointUrl = accountsUrl + "/{id}/balance";
+        this.openAccountEndpointUrl = accountsUrl;
+        this.closeAccountEndpointUrl = accountsUrl + "/{id}/close";
+        this.makeDepositEndpointUrl = accountsUrl + "/{id}/deposit";
+        this.makeWithdrawalEndpointUrl = accountsUrl + "/{id}/withdrawal";
+        this.transferEndpointUrl = accountsUrl + "/{id}/transfer";
+    }
 
     public AccountDetailDTO findAccountById(Long accountId) throws ClientException {
         try{
             final Map<String, Long> params = new HashMap<>();
             params.put("id", accountId);
-            return restTemplate.getForObject(FIND_ACCOUNT_BY_ID_ENDPOINT_URL, AccountDetailDTO.class, params);
+            return restTemplate.getForObject(findAccountByIdEndpointUrl, AccountDetailDTO.class, params);
         } catch (HttpClientErrorException e){
             throw handleErrorAndCreateClientException(e);
         } catch (Exception e){
@@ -52,7 +92,7 @@ public class AccountServiceClient {
     }
 
     public AccountDTO authenticate(String accountNumber, String pin) throws ClientException {
-        final UriComponentsBuilder urlBuilder = UriComponentsBuilder.fromHttpUrl(FIND_ACCOUNT_ENDPOINT_URL)
+        final UriComponentsBuilder urlBuilder = UriComponentsBuilder.fromHttpUrl(findAccountEndpointUrl)
                 .queryParam("accountNumber", accountNumber)
                 .queryParam("pin", pin);
         try{
@@ -68,7 +108,7 @@ public class AccountServiceClient {
         final Map<String, Long> params = new HashMap<>();
         params.put("id", accountId);
         try{
-            return restTemplate.getForObject(GET_CURRENT_BALANCE_ENDPOINT_URL, AccountBalanceDTO.class, params);
+            return restTemplate.getForObject(getCurrentBalanceEndpointUrl, AccountBalanceDTO.class, params);
         } catch (HttpClientErrorException e){
             throw handleErrorAndCreateClientException(e);
         } catch (Exception e){
@@ -78,7 +118,7 @@ public class AccountServiceClient {
 
     public ResponseDTO openNewAccount(AccountRequestDTO requestDTO) throws ClientException{
         try {
-            return restTemplate.postForObject(OPEN_ACCOUNT_ENDPOINT_URL, requestDTO, ResponseDTO.class);
+            return restTemplate.postForObject(openAccountEndpointUrl, requestDTO, ResponseDTO.class);
         } catch (HttpClientErrorException e){
             throw handleErrorAndCreateClientException(e);
         } catch (Exception e){
@@ -95,7 +135,7 @@ public class AccountServiceClient {
         params.put("id", accountId);
 
         try {
-            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(CLOSE_ACCOUNT_ENDPOINT_URL,
+            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(closeAccountEndpointUrl,
                     HttpMethod.PUT,entity,
                     ResponseDTO.class, params);
             return result.getBody();
@@ -115,7 +155,27 @@ public class AccountServiceClient {
         params.put("id", accountId);
 
         try {
-            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(MAKE_WITHDRAWAL_ENDPOINT_URL,
+            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(makeWithdrawalEndpointUrl,
+                    HttpMethod.PUT,entity,
+                    ResponseDTO.class, params);
+            return result.getBody();
+        } catch (HttpClientErrorException e){
+            throw handleErrorAndCreateClientException(e);
+        } catch (Exception e){
+            throw handleGeneralException(e);
+        }
+    }
+
+    public ResponseDTO transfer(Long accountId, TransferRequestDTO requestDTO) throws ClientException{
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+        final HttpEntity<TransferRequestDTO> entity = new HttpEntity<>(requestDTO, headers);
+
+        final Map<String, Long> params = new HashMap<>();
+        params.put("id", accountId);
+
+        try {
+            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(transferEndpointUrl,
                     HttpMethod.PUT,entity,
                     ResponseDTO.class, params);
             return result.getBody();
@@ -135,7 +195,7 @@ public class AccountServiceClient {
         params.put("id", accountId);
 
         try {
-            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(MAKE_DEPOSIT_ENDPOINT_URL,
+            final ResponseEntity<ResponseDTO> result = restTemplate.exchange(makeDepositEndpointUrl,
                     HttpMethod.PUT,entity,
                     ResponseDTO.class, params);
             return result.getBody();
@@ -147,6 +207,41 @@ public class AccountServiceClient {
     }
 
 
+    /**
+     * @return the phase durations in milliseconds the service reported in the
+     * {@code Server-Timing} header of the last call made by the current thread, empty
+     * when it sent none
+     */
+    public Map<String, Double> getLastServerTiming() {
+        return lastServerTiming.get();
+    }
+
+    /**
+     * Parses a {@code Server-Timing} header value such as
+     * {@code lock;dur=0.012, load;dur=1.250, total;dur=3.400} into durations by metric
+     * name. Metrics without a duration are left out.
+     */
+    public static Map<String, Double> parseServerTiming(String header) {
+        if (header == null || header.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Double> durations = new LinkedHashMap<>();
+        for (String metric : header.split(",")) {
+            final String[] parameters = metric.split(";");
+            for (int i = 1; i < parameters.length; i++) {
+                final String parameter = parameters[i].trim();
+                if (parameter.startsWith("dur=")) {
+                    try {
+                        durations.put(parameters[0].trim(), Double.valueOf(parameter.substring(4)));
+                    } catch (NumberFormatException e) {
+                        // A malformed duration is dropped like a missing one.
+                    }
+                }
+            }
+        }
+        return durations;
+    }
+
     private ClientException handleErrorAndCreateClientException(HttpClientErrorException e) {
         final MessageResponseDTO messageResponseDTO = mapToObject(e.getResponseBodyAsString(), MessageResponseDTO.class);
         return new ClientException(messageResponseDTO.getMessage());
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.view;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.test.bank.accountservice.dto.AccountDTO;
+import com.test.bank.accountservice.dto.AccountRequestDTO;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.view.exception.ClientException;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the account service, built on {@link AccountServiceClient}.
+ * <p>
+ * Requests are issued at a fixed arrival rate whatever the response times are, each one on
+ * a worker pool, and latency is measured from the moment the request was scheduled to
+ * start. A slow response therefore counts against every request queued behind it instead
+ * of silently lowering the offered load (coordinated omission). The time actually spent
+ * on the wire is recorded separately as service time, and the phases the service reports
+ * in its {@code Server-Timing} header are aggregated per operation to attribute it.
+ * <p>
+ * Arguments are {@code name=value} pairs, all optional:
+ * <pre>
+ * url=http://localhost:8080/api   service address
+ * rate=100                        requests per second
+ * duration=60                     measured seconds
+ * warmup=10                       seconds run at the same rate before measuring
+ * accounts=100                    accounts opened and funded before the run
+ * concurrency=64                  worker threads, and HTTP connections kept alive
+ * mix=balance:50,deposit:20,withdraw:20,login:8,open:2
+ * report=load-report.json         machine-readable report written at the end
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_MIX = "balance:50,deposit:20,withdraw:20,login:8,open:2";
+    private static final String PIN = "1234";
+    private static final BigDecimal SEED_BALANCE = new BigDecimal("1000000.00");
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private enum Operation {
+        open, login, deposit, withdraw, balance
+    }
+
+    private final Map<String, String> config;
+    private final AccountServiceClient client;
+    private final List<AccountDTO> accounts = new ArrayList<>();
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private LoadGenerator(Map<String, String> config) {
+        this.config = config;
+        this.client = new AccountServiceClient(config.getOrDefault("url",
+                System.getProperty(AccountServiceClient.SERVICE_URL_PROPERTY, "http://localhost:8080/api")));
+
+        final Map<Operation, Integer> mix = parseMix(config.getOrDefault("mix", DEFAULT_MIX));
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+            stats.put(operations[i], new OperationStats());
+        }
+    }
+
+    public static void main(String... args) {
+        final Map<String, String> config = new LinkedHashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println(String.format("Invalid argument %s, expected name=value", arg));
+                System.exit(1);
+            }
+            config.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        // HttpURLConnection keeps only 5 idle connections per host unless told otherwise.
+        System.setProperty("http.maxConnections", config.getOrDefault("concurrency", "64"));
+
+        try {
+            final LoadGenerator generator = new LoadGenerator(config);
+            generator.seedAccounts(intValue(config, "accounts", 100));
+            generator.run();
+        } catch (ClientException | IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void seedAccounts(int count) throws ClientException {
+        System.out.println(String.format("Opening and funding %d accounts...", count));
+        for (int i = 0; i < count; i++) {
+            final ResponseDTO opened = client.openNewAccount(newAccountRequest());
+            final AccountDTO account = client.authenticate(opened.getAccountNumber(), PIN);
+            client.makeDeposit(account.getAccountId(), new TransactionRequestDTO(SEED_BALANCE, "Load test funding"));
+            accounts.add(account);
+        }
+    }
+
+    private void run() throws InterruptedException, IOException {
+        final double rate = doubleValue(config, "rate", 100);
+        final long warmupNanos = TimeUnit.SECONDS.toNanos(intValue(config, "warmup", 10));
+        final long durationNanos = TimeUnit.SECONDS.toNanos(intValue(config, "duration", 60));
+        final int concurrency = intValue(config, "concurrency", 64);
+        final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        final ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmupNanos;
+        final long end = measureFrom + durationNanos;
+        final Instant startedAt = Instant.now();
+        System.out.println(String.format("Running %.1f requests/s for %ds after a %ds warmup...",
+                rate, TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos)));
+
+        long scheduled = 0;
+        for (long i = 0; ; i++) {
+            final long intendedStart = start + (long) (i * intervalNanos);
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final Operation operation = pickOperation();
+            final boolean measured = intendedStart >= measureFrom;
+            if (measured) {
+                scheduled++;
+            }
+            workers.execute(() -> execute(operation, intendedStart, measured));
+        }
+
+        workers.shutdown();
+        if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.err.println("Some requests did not complete within a minute after the run.");
+            workers.shutdownNow();
+        }
+
+        final Map<String, Object> report = buildReport(startedAt, rate, durationNanos, scheduled);
+        final File reportFile = new File(config.getOrDefault("report", "load-report.json"));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+        printSummary(durationNanos);
+        System.out.println(String.format("Report written to %s", reportFile.getAbsolutePath()));
+    }
+
+    private void execute(Operation operation, long intendedStart, boolean measured) {
+        final long sendStart = System.nanoTime();
+        boolean failed = false;
+        try {
+            final AccountDTO account = randomAccount();
+            switch (operation) {
+                case open:
+                    client.openNewAccount(newAccountRequest());
+                    break;
+                case login:
+                    client.authenticate(account.getAccountNumber(), PIN);
+                    break;
+                case deposit:
+                    client.makeDeposit(account.getAccountId(), new TransactionRequestDTO(AMOUNT, "Load test"));
+                    break;
+                case withdraw:
+                    client.makeWithdrawal(account.getAccountId(), new TransactionRequestDTO(AMOUNT, "Load test"));
+                    break;
+                case balance:
+                    client.getCurrentBalanceForAccount(account.getAccountId());
+                    break;
+            }
+        } catch (ClientException | RuntimeException e) {
+            failed = true;
+        }
+        if (measured) {
+            final long now = System.nanoTime();
+            stats.get(operation).record(now - intendedStart, now - sendStart, failed, client.getLastServerTiming());
+        }
+    }
+
+    private Operation pickOperation() {
+        final int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private AccountDTO randomAccount() {
+        return accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+    }
+
+    private Map<String, Object> buildReport(Instant startedAt, double rate, long durationNanos, long scheduled) {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("config", config);
+        report.put("targetRate", rate);
+        report.put("durationSeconds", TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        report.put("scheduled", scheduled);
+
+        final Map<String, Object> operationReports = new LinkedHashMap<>();
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            final OperationStats operationStats = entry.getValue();
+            final Map<String, Object> operationReport = new LinkedHashMap<>();
+            operationReport.put("count", operationStats.latency.getTotalCount());
+            operationReport.put("errors", operationStats.errors.sum());
+            operationReport.put("throughput", operationStats.latency.getTotalCount() / (durationNanos / 1e9));
+            operationReport.put("latencyMicros", percentiles(operationStats.latency));
+            operationReport.put("serviceTimeMicros", percentiles(operationStats.serviceTime));
+            final Map<String, Object> serverTiming = new LinkedHashMap<>();
+            for (Map.Entry<String, Histogram> phase : operationStats.serverTiming.entrySet()) {
+                serverTiming.put(phase.getKey(), percentiles(phase.getValue()));
+            }
+            operationReport.put("serverTimingMicros", serverTiming);
+            operationReports.put(entry.getKey().name(), operationReport);
+        }
+        report.put("operations", operationReports);
+        return report;
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("min", histogram.getTotalCount() > 0 ? histogram.getMinValue() : 0);
+        values.put("mean", Math.round(histogram.getMean()));
+        for (double percentile : PERCENTILES) {
+            values.put("p" + new BigDecimal(String.valueOf(percentile)).stripTrailingZeros().toPlainString(),
+                    histogram.getValueAtPercentile(percentile));
+        }
+        values.put("max", histogram.getMaxValue());
+        return values;
+    }
+
+    private void printSummary(long durationNanos) {
+        System.out.println(String.format("%-10s %9s %7s %9s %10s %10s %10s %10s",
+                "operation", "count", "errors", "req/s", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            final Histogram latency = entry.getValue().latency;
+            System.out.println(String.format("%-10s %9d %7d %9.1f %10d %10d %10d %10d",
+                    entry.getKey(), latency.getTotalCount(), entry.getValue().errors.sum(),
+                    latency.getTotalCount() / (durationNanos / 1e9),
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMaxValue()));
+        }
+        System.out.println("Server-Timing p99 us per phase:");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            final StringBuilder phases = new StringBuilder();
+            for (Map.Entry<String, Histogram> phase : entry.getValue().serverTiming.entrySet()) {
+                phases.append(String.format(" %s=%d", phase.getKey(), phase.getValue().getValueAtPercentile(99)));
+            }
+            System.out.println(String.format("%-10s%s", entry.getKey(), phases));
+        }
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            final String[] entry = part.trim().split(":");
+            try {
+                final int weight = Integer.parseInt(entry[1].trim());
+                if (weight > 0) {
+                    weights.put(Operation.valueOf(entry[0].trim()), weight);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(String.format("Invalid mix entry %s, expected operation:weight with "
+                        + "operation one of %s", part, Arrays.toString(Operation.values())));
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix needs at least one positive weight.");
+        }
+        return weights;
+    }
+
+    private static AccountRequestDTO newAccountRequest() {
+        return new AccountRequestDTO("Load", "Test", PIN, PIN, UUID.randomUUID().toString());
+    }
+
+    private static int intValue(Map<String, String> config, String name, int defaultValue) {
+        return config.containsKey(name) ? Integer.parseInt(config.get(name)) : defaultValue;
+    }
+
+    private static double doubleValue(Map<String, String> config, String name, double defaultValue) {
+        return config.containsKey(name) ? Double.parseDouble(config.get(name)) : defaultValue;
+    }
+
+    private static final class OperationStats {
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final Histogram serviceTime = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, Histogram> serverTiming = new ConcurrentSkipListMap<>();
+
+        void record(long latencyNanos, long serviceTimeNanos, boolean failed, Map<String, Double> serverTimingMillis) {
+            latency.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            serviceTime.recordValue(TimeUnit.NANOSECONDS.toMicros(serviceTimeNanos));
+            if (failed) {
+                errors.increment();
+            }
+            for (Map.Entry<String, Double> phase : serverTimingMillis.entrySet()) {
+                serverTiming.computeIfAbsent(phase.getKey(), name -> new ConcurrentHistogram(3))
+                        .recordValue(Math.round(phase.getValue() * 1000));
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+create table account (
+    id bigint generated by default as identity,
+    account_number varchar(255),
+    balance_minor bigint default 0 not null,
+    first_name varchar(255),
+    holder_id varchar(255),
+    last_name varchar(255),
+    pin varchar(4),
+    status varchar(255),
+    version bigint default 0 not null,
+    primary key (id)
+);
+
+create table account_transaction (
+    id bigint not null,
+    amount_minor bigint not null,
+    description varchar(255),
+    transaction_date timestamp,
+    transaction_type varchar(255),
+    transfer_id varchar(36),
+    account_id bigint,
+    primary key (id)
+);
+
+create table idempotency_record (
+    idempotency_key varchar(100) not null,
+    account_id bigint,
+    created_date timestamp,
+    operation varchar(255),
+    transaction_id varchar(255),
+    primary key (idempotency_key)
+);
+
+alter table account add constraint ux_account_number unique (account_number);
+create index ix_account_holder_id on account (holder_id);
+create index ix_account_transaction_account_date on account_transaction (account_id, transaction_date desc, id desc);
+create index ix_account_transaction_transfer_id on account_transaction (transfer_id);
+alter table account_transaction add constraint fk_account_transaction_account
+    foreign key (account_id) references account (id);
+
+-- Every next value reserves a block of account numbers for one node, see AccountNumberAllocator.
+create sequence account_number_seq start with 10000000 increment by ${account_number_block_size};
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.concurrency.AccountLockRegistry;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.dto.TransferRequestDTO;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.service.AccountService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(locations = "classpath:db-test.properties")
+public class AccountServiceConcurrencyTest {
+
+    private static final int OPERATIONS_PER_THREAD = 200;
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private AccountLockRegistry accountLockRegistry;
+
+    @Test
+    public void testUnrelatedAccountsAreNotSerialized() throws Exception {
+        final CountDownLatch firstLocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.submit(() -> accountLockRegistry.executeLocked(1L, () -> {
+                firstLocked.countDown();
+                await(release);
+                return null;
+            }));
+            Assert.assertTrue(firstLocked.await(5, TimeUnit.SECONDS));
+
+            final Future<Boolean> other = executor.submit(() -> accountLockRegistry.executeLocked(2L, () -> Boolean.TRUE));
+            Assert.assertTrue("Account 2 must not wait behind account 1", other.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentWithdrawalsNeverOverdraw() throws Exception {
+        final Account account = TestAccounts.create(accountRepository);
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(100), "Salary"));
+
+        final int threads = 8;
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        runConcurrently(threads, index -> {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(new BigDecimal(5), "ATM"));
+                    succeeded.incrementAndGet();
+                } catch (ApiException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        Assert.assertEquals(20, succeeded.get());
+        Assert.assertEquals(60, rejected.get());
+        Assert.assertEquals(0, accountRepository.getRunningBalance(account.getId()).signum());
+    }
+
+    @Test
+    public void testOppositeTransfersDoNotDeadlock() throws Exception {
+        final Account first = TestAccounts.create(accountRepository);
+        final Account second = TestAccounts.create(accountRepository);
+        accountService.makeDeposit(first.getId(), new TransactionRequestDTO(new BigDecimal(1000), "Salary"));
+        accountService.makeDeposit(second.getId(), new TransactionRequestDTO(new BigDecimal(1000), "Salary"));
+
+        runConcurrently(8, index -> {
+            final Account from = index % 2 == 0 ? first : second;
+            final Account to = index % 2 == 0 ? second : first;
+            for (int i = 0; i < 50; i++) {
+                accountService.transfer(from.getId(), new TransferRequestDTO(to.getId(), BigDecimal.ONE, "Ping-pong"));
+            }
+        });
+
+        Assert.assertEquals(0, new BigDecimal(1000).compareTo(accountRepository.getRunningBalance(first.getId())));
+        Assert.assertEquals(0, new BigDecimal(1000).compareTo(accountRepository.getRunningBalance(second.getId())));
+    }
+
+    /**
+     * Throughput is measured by AccountLockScalingBenchmark; this checks that posting
+     * from many threads ends in the same balances as posting from one.
+     */
+    @Test
+    public void testParallelDepositsMatchSequentialRun() throws Exception {
+        final int threads = 8;
+        final List<Account> sequential = new ArrayList<>();
+        final List<Account> parallel = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            sequential.add(TestAccounts.create(accountRepository));
+            parallel.add(TestAccounts.create(accountRepository));
+        }
+
+        runConcurrently(1, ignored -> {
+            for (int index = 0; index < threads; index++) {
+                depositShare(sequential, index);
+            }
+        });
+        runConcurrently(threads, index -> depositShare(parallel, index));
+
+        for (int i = 0; i < threads; i++) {
+            final BigDecimal expected = accountRepository.getRunningBalance(sequential.get(i).getId());
+            Assert.assertEquals(0, new BigDecimal(OPERATIONS_PER_THREAD).compareTo(expected));
+            Assert.assertEquals(0, expected.compareTo(accountRepository.getRunningBalance(parallel.get(i).getId())));
+            Assert.assertEquals(0, expected.compareTo(accountRepository.findById(parallel.get(i).getId()).get().getBalance()));
+        }
+    }
+
+    /**
+     * Every share deposits on its own account and half of it also on the next one, so
+     * neighbouring threads of the parallel run write the same accounts.
+     */
+    private void depositShare(List<Account> accounts, int index) {
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            final Account account = accounts.get(i % 2 == 0 ? index : (index + 1) % accounts.size());
+            accountService.makeDeposit(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "Load"));
+        }
+    }
+
+
+    private void runConcurrently(int threads, IndexedTask task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    task.run(index);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface IndexedTask {
+        void run(int index);
+    }
+}
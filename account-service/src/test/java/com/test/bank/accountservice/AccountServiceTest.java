@@ -15,15 +15,24 @@
  */
 package com.test.bank.accountservice;
 
-import com.test.bank.accountservice.dto.AccountDTO;
-import com.test.bank.accountservice.dto.AccountRequestDTO;
-import com.test.bank.accountservice.dto.ResponseDTO;
-import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.dto.*;
 import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.StatementFormat;
+import com.test.bank.accountservice.enums.TransactionType;
 import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
 import com.test.bank.accountservice.model.Account;
 import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.repository.AccountTransactionRepository;
 import com.test.bank.accountservice.service.AccountService;
+import com.test.bank.accountservice.service.AsyncAccountService;
+import com.test.bank.accountservice.service.StatementExportService;
+import com.test.bank.accountservice.util.Constants;
+import com.test.bank.accountservice.util.GeneralUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,8 +44,16 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.transaction.Transactional;
 import javax.validation.ConstraintViolationException;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -47,18 +64,20 @@ public class AccountServiceTest {
     private AccountService accountService;
     @Autowired
     private AccountRepository accountRepository;
+    @Autowired
+    private AccountTransactionRepository accountTransactionRepository;
+    @Autowired
+    private AsyncAccountService asyncAccountService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private StatementExportService statementExportService;
 
     private Account account;
 
     @Before
     public void init() {
-        account = new Account();
-        account.setFirstName("Jaime");
-        account.setLastName("Flores");
-        account.setHolderId("522665465785546963");
-        account.setPin("1234");
-        account.setStatus(AccountStatus.ACTIVE);
-
+        account = TestAccounts.newAccount();
     }
 
     @Test
@@ -109,6 +128,22 @@ public class AccountServiceTest {
         Assert.assertNotNull(accountService.searchAccount(response.getAccountNumber(), response.getPin()));
     }
 
+    @Test
+    public void testOpenedAccountNumbersAreUniqueAndCarryCheckDigit() {
+        Assert.assertEquals("79927398713", GeneralUtils.appendLuhnCheckDigit("7992739871"));
+
+        final Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 250; i++) {
+            final String number = accountService.openAccount(createRequest()).getAccountNumber();
+            Assert.assertEquals(Constants.MAX_DIGITS_ACCOUNT_NUMBER, number.length());
+            Assert.assertTrue(GeneralUtils.hasValidLuhnCheckDigit(number));
+            final char mistyped = (char) ('0' + (number.charAt(3) - '0' + 1) % 10);
+            Assert.assertFalse(GeneralUtils.hasValidLuhnCheckDigit(number.substring(0, 3) + mistyped + number.substring(4)));
+            numbers.add(number);
+        }
+        Assert.assertEquals(250, numbers.size());
+    }
+
     @Test
     public void testValidationExceptionsAreCorrectFired() {
         AccountRequestDTO accountRequestDTO = createRequest();
@@ -227,6 +262,223 @@ public class AccountServiceTest {
         Assert.assertEquals(BigDecimal.ZERO.stripTrailingZeros(), accountRepository.getRunningBalance(account.getId()).stripTrailingZeros());
     }
 
+    @Test
+    public void testProcessBatchReportsEveryItem() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+
+        final BatchTransactionRequestDTO batch = new BatchTransactionRequestDTO(Arrays.asList(
+                new BatchTransactionItemDTO(account.getId(), TransactionType.DEPOSIT, new BigDecimal(100), null, "Salary"),
+                new BatchTransactionItemDTO(account.getId(), TransactionType.WITHDRAWAL, new BigDecimal(150), null, "Rent"),
+                new BatchTransactionItemDTO(account.getId(), TransactionType.DEBIT, new BigDecimal(30), "CREDIT", "Card"),
+                new BatchTransactionItemDTO(-1L, TransactionType.DEPOSIT, BigDecimal.TEN, null, "Unknown")));
+
+        final BatchTransactionResponseDTO response = accountService.processBatch(batch);
+
+        Assert.assertEquals(2, response.getSucceeded());
+        Assert.assertEquals(2, response.getFailed());
+        Assert.assertTrue(response.getResults().get(0).isSuccess());
+        Assert.assertNotNull(response.getResults().get(0).getTransactionId());
+        Assert.assertEquals("Operation cancelled due to insufficient funds.", response.getResults().get(1).getMessage());
+        Assert.assertTrue(response.getResults().get(2).isSuccess());
+        Assert.assertFalse(response.getResults().get(3).isSuccess());
+        Assert.assertEquals(new BigDecimal(70).stripTrailingZeros(), accountRepository.getRunningBalance(account.getId()).stripTrailingZeros());
+    }
+
+    @Test
+    public void testAsyncServiceCompletesOnDatabaseExecutor() throws Exception {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+
+        asyncAccountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(40), "Salary"), null).get();
+        final AccountBalanceDTO balance = asyncAccountService.getCurrentBalance(account.getId()).get();
+        Assert.assertEquals(new BigDecimal(40).stripTrailingZeros(), balance.getBalance().stripTrailingZeros());
+
+        try {
+            asyncAccountService.getCurrentBalance(-1L).get();
+            Assert.fail("An unknown account must complete exceptionally");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ApiException);
+        }
+    }
+
+    @Test
+    public void testIdempotencyKeyReplaysOriginalTransaction() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        final String idempotencyKey = UUID.randomUUID().toString();
+
+        final ResponseDTO first = accountService.makeDeposit(account.getId(),
+                new TransactionRequestDTO(new BigDecimal(25), "Salary"), idempotencyKey);
+        final ResponseDTO retried = accountService.makeDeposit(account.getId(),
+                new TransactionRequestDTO(new BigDecimal(25), "Salary"), idempotencyKey);
+
+        Assert.assertEquals(first.getTransactionId(), retried.getTransactionId());
+        Assert.assertEquals(0, new BigDecimal(25).compareTo(accountRepository.getRunningBalance(account.getId())));
+
+        try {
+            accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "ATM"), idempotencyKey);
+            Assert.fail("A key must not be reused for a different operation");
+        } catch (ApiException e) {
+            Assert.assertEquals(0, new BigDecimal(25).compareTo(accountRepository.getRunningBalance(account.getId())));
+        }
+    }
+
+    @Test
+    public void testTransferPostsTwoLinkedLegs() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        final Account target = new Account();
+        target.setFirstName("Ana");
+        target.setLastName("Flores");
+        target.setHolderId("522665465785546964");
+        target.setPin("4321");
+        target.setStatus(AccountStatus.ACTIVE);
+        target.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(target);
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(100), "Salary"));
+
+        final ResponseDTO responseDTO = accountService.transfer(account.getId(),
+                new TransferRequestDTO(target.getId(), new BigDecimal(30), "Rent"));
+
+        Assert.assertNotNull(responseDTO.getTransferId());
+        Assert.assertEquals(2, accountTransactionRepository.findByTransferId(responseDTO.getTransferId()).size());
+        Assert.assertEquals(0, new BigDecimal(70).compareTo(accountRepository.getRunningBalance(account.getId())));
+        Assert.assertEquals(0, new BigDecimal(30).compareTo(accountRepository.getRunningBalance(target.getId())));
+    }
+
+    @Test(expected = ApiException.class)
+    public void testTransferToUnknownAccount() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        accountService.transfer(account.getId(), new TransferRequestDTO(-1L, BigDecimal.ONE, "Rent"));
+    }
+
+    @Test
+    public void testBalanceIsServedFromCacheAfterWrites() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+
+        final FunctionCounter hits = meterRegistry.get("cache.gets")
+                .tags("cache", "balance", "result", "hit").functionCounter();
+        final double hitsBefore = hits.count();
+        Assert.assertEquals(0, new BigDecimal(40).compareTo(accountService.getCurrentBalance(account.getId()).getBalance()));
+
+        accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(new BigDecimal(15), "ATM"));
+        Assert.assertEquals(0, new BigDecimal(25).compareTo(accountService.getCurrentBalance(account.getId()).getBalance()));
+        // Both balance reads, plus the withdrawal: STRIPED mode checks its funds against the
+        // stored balance before reading the account.
+        Assert.assertEquals(hitsBefore + 3, hits.count(), 0);
+    }
+
+    @Test
+    public void testOperationsAreTimedAndRejectionsCountedByReason() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+
+        final Timer deposits = meterRegistry.get("bank.account.operations")
+                .tags("operation", "deposit", "outcome", "success").timer();
+        final Timer rejectedWithdrawals = meterRegistry.get("bank.account.operations")
+                .tags("operation", "withdrawal", "outcome", "rejected").timer();
+        final Counter insufficientFunds = meterRegistry.get("bank.account.rejections")
+                .tags("reason", "insufficient_funds").counter();
+        final long depositsBefore = deposits.count();
+        final long rejectedBefore = rejectedWithdrawals.count();
+        final double insufficientFundsBefore = insufficientFunds.count();
+
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(10), "Salary"));
+        try {
+            accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(new BigDecimal(20), "ATM"));
+            Assert.fail("The withdrawal must be rejected");
+        } catch (ApiException e) {
+            Assert.assertEquals(ErrorReason.INSUFFICIENT_FUNDS, e.getReason());
+        }
+
+        Assert.assertEquals(depositsBefore + 1, deposits.count());
+        Assert.assertEquals(rejectedBefore + 1, rejectedWithdrawals.count());
+        Assert.assertEquals(insufficientFundsBefore + 1, insufficientFunds.count(), 0);
+        Assert.assertEquals(0, meterRegistry.get("bank.account.lock.waiting").gauge().value(), 0);
+    }
+
+    @Test
+    public void testFindAccountReturnsLastFiveTransactions() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        for (int i = 1; i <= 6; i++) {
+            accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(i), "Deposit " + i));
+        }
+
+        final AccountDetailDTO detail = accountService.findAccount(account.getId());
+
+        Assert.assertEquals(account.getAccountNumber(), detail.getAccountNumber());
+        Assert.assertEquals("Jaime Flores", detail.getHolderFullName());
+        Assert.assertEquals(0, new BigDecimal(21).compareTo(detail.getCurrentBalance()));
+        Assert.assertEquals(5, detail.getLastTransactions().size());
+        Assert.assertEquals(TransactionType.DEPOSIT.toString(), detail.getLastTransactions().get(0).getTransactionType());
+
+        accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "ATM"));
+        final List<TransactionDetailDTO> lastTransactions = accountService.findAccount(account.getId()).getLastTransactions();
+        Assert.assertEquals(5, lastTransactions.size());
+        Assert.assertEquals("ATM", lastTransactions.get(0).getDescription());
+        Assert.assertEquals(TransactionType.WITHDRAWAL.toString(), lastTransactions.get(0).getTransactionType());
+    }
+
+    @Test
+    public void testTransactionHistoryIsPagedWithCursor() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        for (int i = 1; i <= 5; i++) {
+            accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(i), "Deposit " + i));
+        }
+        accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "ATM"));
+
+        final Set<String> seen = new HashSet<>();
+        TransactionPageDTO page = accountService.findTransactions(account.getId(), null, null, null, null, 2);
+        int pages = 1;
+        seen.addAll(page.getTransactions().stream().map(TransactionDetailDTO::getTransactionId).collect(Collectors.toList()));
+        while (page.getNextCursor() != null) {
+            page = accountService.findTransactions(account.getId(), null, null, null, page.getNextCursor(), 2);
+            seen.addAll(page.getTransactions().stream().map(TransactionDetailDTO::getTransactionId).collect(Collectors.toList()));
+            pages++;
+        }
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(6, seen.size());
+
+        final TransactionPageDTO withdrawals = accountService.findTransactions(account.getId(),
+                TransactionType.WITHDRAWAL, LocalDateTime.now().minusDays(1), null, null, null);
+        Assert.assertEquals(1, withdrawals.getTransactions().size());
+        Assert.assertNull(withdrawals.getNextCursor());
+    }
+
+    @Test(expected = ApiException.class)
+    public void testTransactionHistoryRejectsInvalidCursor() {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        accountService.findTransactions(account.getId(), null, null, null, "not-a-cursor", null);
+    }
+
+    @Test
+    public void testStatementExportStreamsEveryTransaction() throws Exception {
+        account.setAccountNumber(UUID.randomUUID().toString());
+        accountRepository.save(account);
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal("10.50"), "Salary, October"));
+        accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "ATM"));
+
+        final ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        statementExportService.export(account.getId(), StatementFormat.NDJSON, ndjson);
+        final String[] lines = ndjson.toString("UTF-8").split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[0].startsWith("{") && lines[1].startsWith("{"));
+        Assert.assertTrue(lines[0].contains("\"amount\":10.50") || lines[1].contains("\"amount\":10.50"));
+
+        final ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        statementExportService.export(account.getId(), StatementFormat.CSV, csv);
+        final String[] rows = csv.toString("UTF-8").split("\n");
+        Assert.assertEquals(3, rows.length);
+        Assert.assertTrue(csv.toString("UTF-8").contains(",10.50,\"Salary, October\","));
+    }
+
     private AccountRequestDTO createRequest() {
         AccountRequestDTO accountRequestDTO = new AccountRequestDTO();
         accountRequestDTO.setAccountPin("1234");
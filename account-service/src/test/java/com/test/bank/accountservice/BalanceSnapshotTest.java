@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.journal.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class BalanceSnapshotTest {
+
+    @Rule
+    public TemporaryFolder directory = new TemporaryFolder();
+
+    private TransactionJournal journal;
+    private BalanceSnapshotter snapshotter;
+
+    @Before
+    public void setUp() {
+        journal = new TransactionJournal(directory.getRoot().getAbsolutePath(), 1024, 1);
+        snapshotter = new BalanceSnapshotter(journal, directory.getRoot().getAbsolutePath(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    public void testSnapshotAppliesTheJournalRecordsAppendedAfterIt() {
+        final BalanceSnapshot initial = new BalanceSnapshot(0);
+        initial.put(1L, 1000, 3, AccountStatus.ACTIVE);
+        initial.put(2L, 500, 1, AccountStatus.ACTIVE);
+        snapshotter.write(initial);
+
+        journal.append(record(1L, 1500, 4, AccountStatus.ACTIVE));
+        // Committed before the previous record of the account but journaled after it.
+        journal.append(record(1L, 1200, 3, AccountStatus.ACTIVE));
+        journal.append(record(2L, 500, 2, AccountStatus.CLOSED));
+        journal.append(record(3L, 0, 0, AccountStatus.ACTIVE));
+        snapshotter.takeSnapshot();
+
+        final BalanceSnapshot latest = snapshotter.loadLatest();
+        Assert.assertEquals(4, latest.getSequence());
+        Assert.assertEquals(3, latest.size());
+        Assert.assertEquals(1500, latest.get(1L).getBalanceMinor());
+        Assert.assertEquals(AccountStatus.CLOSED, latest.get(2L).getStatus());
+        Assert.assertEquals(0, latest.get(3L).getVersion());
+    }
+
+    @Test
+    public void testUnchangedAccountsAreCopiedFromThePreviousSnapshot() {
+        final BalanceSnapshot initial = new BalanceSnapshot(0);
+        for (long accountId = 2; accountId <= 200; accountId += 2) {
+            initial.put(accountId, accountId * 10, 1, AccountStatus.ACTIVE);
+        }
+        snapshotter.write(initial);
+
+        journal.append(record(10L, 5, 2, AccountStatus.ACTIVE));
+        journal.append(record(51L, 0, 0, AccountStatus.ACTIVE));
+        journal.append(record(201L, 0, 0, AccountStatus.ACTIVE));
+        snapshotter.takeSnapshot();
+
+        final BalanceSnapshot latest = snapshotter.loadLatest();
+        Assert.assertEquals(3, latest.getSequence());
+        Assert.assertEquals(102, latest.size());
+        Assert.assertEquals(5, latest.get(10L).getBalanceMinor());
+        Assert.assertEquals(0, latest.get(51L).getVersion());
+        Assert.assertEquals(0, latest.get(201L).getVersion());
+        Assert.assertEquals(2000, latest.get(200L).getBalanceMinor());
+        final List<Long> ids = new ArrayList<>();
+        latest.forEach((accountId, state) -> ids.add(accountId));
+        final List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, ids);
+    }
+
+    @Test
+    public void testCorruptSnapshotFallsBackToThePreviousOne() throws Exception {
+        final BalanceSnapshot first = new BalanceSnapshot(0);
+        first.put(1L, 1000, 1, AccountStatus.ACTIVE);
+        snapshotter.write(first);
+        journal.append(record(1L, 2000, 2, AccountStatus.ACTIVE));
+        snapshotter.takeSnapshot();
+        journal.append(record(1L, 3000, 3, AccountStatus.ACTIVE));
+        snapshotter.takeSnapshot();
+
+        final File[] snapshots = directory.getRoot().listFiles((dir, name) -> name.startsWith("snapshot-"));
+        Arrays.sort(snapshots);
+        Assert.assertEquals("Only the newest snapshots are kept", 2, snapshots.length);
+        try (RandomAccessFile file = new RandomAccessFile(snapshots[1], "rw")) {
+            file.seek(file.length() - 10);
+            file.writeByte(0x7f);
+        }
+
+        final BalanceSnapshot latest = snapshotter.loadLatest();
+        Assert.assertEquals(1, latest.getSequence());
+        Assert.assertEquals(2000, latest.get(1L).getBalanceMinor());
+    }
+
+    private static JournalRecord record(long accountId, long balanceMinor, long version, AccountStatus status) {
+        return new JournalRecord(0, 0, accountId, TransactionType.DEPOSIT, status, 0, balanceMinor, version,
+                System.currentTimeMillis());
+    }
+}
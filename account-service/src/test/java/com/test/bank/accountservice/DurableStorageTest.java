@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.dto.AccountDTO;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.journal.BalanceSnapshot;
+import com.test.bank.accountservice.journal.BalanceSnapshotter;
+import com.test.bank.accountservice.journal.JournalRecord;
+import com.test.bank.accountservice.journal.TransactionJournal;
+import com.test.bank.accountservice.service.AccountService;
+import com.test.bank.accountservice.service.BalanceStore;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class DurableStorageTest {
+
+    @Rule
+    public TemporaryFolder dataDir = new TemporaryFolder();
+
+    @Test
+    public void testAccountsSurviveARestart() {
+        final AccountDTO account;
+        try (ConfigurableApplicationContext context = start()) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            final ResponseDTO opened = accountService.openAccount(TestAccounts.openRequest());
+            account = accountService.searchAccount(opened.getAccountNumber(), "1234");
+            accountService.makeDeposit(account.getAccountId(), new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+            accountService.makeWithdrawal(account.getAccountId(), new TransactionRequestDTO(new BigDecimal(15), "ATM"));
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            Assert.assertEquals(0, new BigDecimal(25).compareTo(
+                    accountService.getCurrentBalance(account.getAccountId()).getBalance()));
+            Assert.assertEquals(2, accountService.findAccount(account.getAccountId()).getLastTransactions().size());
+        }
+    }
+
+    @Test
+    public void testPostingsAreJournaledWithTheirBalance() {
+        try (ConfigurableApplicationContext context = start()) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            final long accountId = openAccount(accountService);
+            accountService.makeDeposit(accountId, new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+            accountService.makeWithdrawal(accountId, new TransactionRequestDTO(new BigDecimal(15), "ATM"));
+
+            final TransactionJournal journal = context.getBean(TransactionJournal.class);
+            final List<JournalRecord> records = new ArrayList<>();
+            journal.replay(0, records::add);
+            Assert.assertEquals(3, records.size());
+            Assert.assertNull(records.get(0).getTransactionType());
+            Assert.assertEquals(AccountStatus.ACTIVE, records.get(0).getStatus());
+            // Postings do not wait for the journal, the records are forced within the sync interval.
+            journal.awaitDurable(journal.getAppendedSequence());
+            Assert.assertEquals(journal.getAppendedSequence(), journal.getDurableSequence());
+            Assert.assertEquals(TransactionType.WITHDRAWAL, records.get(2).getTransactionType());
+            Assert.assertEquals(-1500, records.get(2).getAmountMinor());
+            Assert.assertEquals(2500, records.get(2).getBalanceMinor());
+            Assert.assertEquals(accountId, records.get(2).getAccountId());
+        }
+    }
+
+    @Test
+    public void testRestartLoadsBalancesFromTheSnapshot() {
+        final long accountId;
+        try (ConfigurableApplicationContext context = start()) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            accountId = openAccount(accountService);
+            accountService.makeDeposit(accountId, new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+            context.getBean(BalanceSnapshotter.class).takeSnapshot();
+            accountService.makeWithdrawal(accountId, new TransactionRequestDTO(new BigDecimal(15), "ATM"));
+        }
+
+        try (ConfigurableApplicationContext context = start()) {
+            Assert.assertEquals(2500, context.getBean(BalanceStore.class).getBalance(accountId));
+            final BalanceSnapshot snapshot = context.getBean(BalanceSnapshotter.class).loadLatest();
+            Assert.assertEquals(context.getBean(TransactionJournal.class).getAppendedSequence(), snapshot.getSequence());
+        }
+
+        // Changes made while the journal was off are read back from the database.
+        try (ConfigurableApplicationContext context = start("--bank.journal.enabled=false")) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            accountService.makeDeposit(accountId, new TransactionRequestDTO(new BigDecimal(5), "Refund"));
+            accountService.closeAccount(accountId);
+        }
+        try (ConfigurableApplicationContext context = start()) {
+            Assert.assertEquals(3000, context.getBean(BalanceStore.class).getBalance(accountId));
+            Assert.assertEquals(AccountStatus.CLOSED,
+                    context.getBean(BalanceSnapshotter.class).loadLatest().get(accountId).getStatus());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartupFailsWhenTheDatabaseIsBehindTheJournal() throws Throwable {
+        final String journalDir = "--bank.journal.dir=" + dataDir.getRoot().getAbsolutePath() + "/journal";
+        try (ConfigurableApplicationContext context = start()) {
+            final AccountService accountService = context.getBean(AccountService.class);
+            accountService.makeDeposit(openAccount(accountService), new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+        }
+
+        final File restoredDataDir = dataDir.newFolder("restored");
+        assertStartupFails(() -> start("--bank.data-dir=" + restoredDataDir.getAbsolutePath(), journalDir));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartupFailsWhenCommitsAreWrittenLate() throws Throwable {
+        assertStartupFails(() -> start(
+                "--spring.datasource.url=jdbc:h2:file:" + dataDir.getRoot() + "/bank;WRITE_DELAY=500"));
+    }
+
+    private static long openAccount(AccountService accountService) {
+        final ResponseDTO opened = accountService.openAccount(TestAccounts.openRequest());
+        return accountService.searchAccount(opened.getAccountNumber(), "1234").getAccountId();
+    }
+
+    private static void assertStartupFails(Supplier<ConfigurableApplicationContext> startup) throws Throwable {
+        try (ConfigurableApplicationContext context = startup.get()) {
+            Assert.fail("The durable profile must not start");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && !(cause instanceof IllegalStateException)) {
+                cause = cause.getCause();
+            }
+            throw cause;
+        }
+    }
+
+    private ConfigurableApplicationContext start(String... overrides) {
+        final List<String> args = new ArrayList<>(Arrays.asList(overrides));
+        args.add("--server.port=0");
+        if (args.stream().noneMatch(arg -> arg.startsWith("--bank.data-dir="))) {
+            args.add("--bank.data-dir=" + dataDir.getRoot().getAbsolutePath());
+        }
+        return new SpringApplicationBuilder(AccountServiceApplication.class)
+                .profiles("durable")
+                .run(args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.util.Money;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+public class MoneyTest {
+
+    @Test
+    public void testConvertsAtTheBoundary() {
+        Assert.assertEquals(1234L, Money.toMinorUnits(new BigDecimal("12.34")));
+        Assert.assertEquals(1200L, Money.toMinorUnits(new BigDecimal("12")));
+        Assert.assertEquals(new BigDecimal("12.34"), Money.toBigDecimal(1234L));
+        Assert.assertEquals(new BigDecimal("-0.05"), Money.toBigDecimal(-5L));
+    }
+
+    @Test(expected = ApiException.class)
+    public void testRejectsSubCentAmounts() {
+        Money.toMinorUnits(new BigDecimal("0.001"));
+    }
+
+    @Test(expected = ApiException.class)
+    public void testRejectsOverflow() {
+        Money.add(Long.MAX_VALUE, 1L);
+    }
+
+    @Test(expected = ApiException.class)
+    public void testRejectsUnderflow() {
+        Money.subtract(Long.MIN_VALUE + 1, 2L);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.service.AccountService;
+import com.test.bank.accountservice.service.BalanceStore;
+import com.test.bank.accountservice.service.OffHeapBalanceStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(locations = "classpath:db-test.properties", properties = {
+        "bank.balance-store.type=OFF_HEAP",
+        "bank.balance-store.off-heap.max-accounts=1000"
+})
+public class OffHeapBalanceStoreTest {
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private BalanceStore balanceStore;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testBalancesAreServedFromTheOffHeapTable() {
+        Assert.assertTrue(balanceStore instanceof OffHeapBalanceStore);
+        final ResponseDTO opened = accountService.openAccount(TestAccounts.openRequest());
+        final long accountId = accountService.searchAccount(opened.getAccountNumber(), "1234").getAccountId();
+        accountService.makeDeposit(accountId, new TransactionRequestDTO(new BigDecimal(40), "Salary"));
+
+        final OffHeapBalanceStore store = (OffHeapBalanceStore) balanceStore;
+        Assert.assertEquals(4000, store.getBalance(accountId));
+        Assert.assertEquals(AccountStatus.ACTIVE, store.getStatus(accountId));
+        Assert.assertEquals(0, new BigDecimal(40).compareTo(accountService.getCurrentBalance(accountId).getBalance()));
+
+        final double hits = meterRegistry.get("cache.gets").tag("cache", "balance").tag("result", "hit").functionCounter().count();
+        try {
+            accountService.makeWithdrawal(accountId, new TransactionRequestDTO(new BigDecimal(50), "ATM"));
+            Assert.fail("The withdrawal is not covered by the balance");
+        } catch (ApiException e) {
+            Assert.assertEquals("Operation cancelled due to insufficient funds.", e.getMessage());
+        }
+        Assert.assertEquals("The withdrawal was rejected from the stored balance", hits + 1,
+                meterRegistry.get("cache.gets").tag("cache", "balance").tag("result", "hit").functionCounter().count(), 0);
+        Assert.assertEquals(4000, store.getBalance(accountId));
+    }
+
+    @Test
+    public void testOlderVersionsNeverReplaceNewerOnes() {
+        final OffHeapBalanceStore store = new OffHeapBalanceStore(16);
+        Assert.assertEquals(BalanceStore.MISSING, store.getBalance(7L));
+        Assert.assertTrue(store.putIfNewer(7L, 500, 2, AccountStatus.ACTIVE));
+        Assert.assertFalse(store.putIfNewer(7L, 100, 1, AccountStatus.ACTIVE));
+        Assert.assertEquals(500, store.getBalance(7L));
+
+        Assert.assertFalse(store.compareAndSet(7L, 1, 900, 3, AccountStatus.CLOSED));
+        Assert.assertTrue(store.compareAndSet(7L, 2, 900, 3, AccountStatus.CLOSED));
+        Assert.assertEquals(900, store.getBalance(7L));
+        Assert.assertEquals(3, store.getVersion(7L));
+        Assert.assertEquals(AccountStatus.CLOSED, store.getStatus(7L));
+        Assert.assertFalse("Unknown accounts can not be compared", store.compareAndSet(8L, 0, 1, 1, AccountStatus.ACTIVE));
+        Assert.assertEquals(-1, store.getVersion(8L));
+    }
+
+    @Test
+    public void testAccountsBeyondTheCapacityAreNotStored() {
+        final OffHeapBalanceStore store = new OffHeapBalanceStore(100);
+        for (long accountId = 1; accountId <= 150; accountId++) {
+            store.putIfNewer(accountId, accountId, 0, AccountStatus.ACTIVE);
+        }
+        Assert.assertEquals(100, store.size());
+        Assert.assertEquals(100, store.getBalance(100L));
+        Assert.assertEquals(BalanceStore.MISSING, store.getBalance(101L));
+    }
+
+    @Test
+    public void testReadersNeverSeeAHalfWrittenSlot() throws Exception {
+        final OffHeapBalanceStore store = new OffHeapBalanceStore(16);
+        store.putIfNewer(1L, 0, 0, AccountStatus.ACTIVE);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> writer = executor.submit(() -> {
+                for (long version = 1; version <= 200_000; version++) {
+                    Assert.assertTrue(store.compareAndSet(1L, version - 1, version * 10, version, AccountStatus.ACTIVE));
+                }
+                running.set(false);
+            });
+            final Future<?> reader = executor.submit(() -> {
+                long last = 0;
+                while (running.get()) {
+                    final long balance = store.getBalance(1L);
+                    Assert.assertEquals(0, balance % 10);
+                    Assert.assertTrue("Balances only move forward", balance >= last);
+                    last = balance;
+                }
+            });
+            writer.get(60, TimeUnit.SECONDS);
+            reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(2_000_000, store.getBalance(1L));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.service.AccountService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(locations = "classpath:db-test.properties", properties = {
+        "spring.datasource.url=jdbc:h2:mem:optimistic;MV_STORE=FALSE",
+        "bank.transaction.concurrency-mode=OPTIMISTIC",
+        "bank.transaction.optimistic.max-attempts=100"
+})
+public class OptimisticConcurrencyTest {
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    public void testConflictingDepositsAreRetried() throws Exception {
+        final Account account = TestAccounts.create(accountRepository);
+
+        final int threads = 4;
+        final int depositsPerThread = 25;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int j = 0; j < depositsPerThread; j++) {
+                        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(BigDecimal.ONE, "Hot account"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final Account saved = accountRepository.findById(account.getId()).get();
+        Assert.assertEquals(0, new BigDecimal(threads * depositsPerThread).compareTo(saved.getBalance()));
+        Assert.assertEquals(threads * depositsPerThread, saved.getVersion());
+    }
+
+    @Test
+    public void testRetriesRacingWithTheSameKeyPostOnce() throws Exception {
+        final Account account = TestAccounts.create(accountRepository);
+
+        final int threads = 4;
+        final int rounds = 20;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                final String idempotencyKey = UUID.randomUUID().toString();
+                final CyclicBarrier barrier = new CyclicBarrier(threads);
+                final List<Future<ResponseDTO>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(() -> {
+                        barrier.await();
+                        return accountService.makeDeposit(account.getId(),
+                                new TransactionRequestDTO(BigDecimal.ONE, "Retried"), idempotencyKey);
+                    }));
+                }
+                final Set<String> transactionIds = new HashSet<>();
+                for (Future<ResponseDTO> future : futures) {
+                    transactionIds.add(future.get(60, TimeUnit.SECONDS).getTransactionId());
+                }
+                Assert.assertEquals(1, transactionIds.size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(0, new BigDecimal(rounds).compareTo(accountRepository.getRunningBalance(account.getId())));
+    }
+
+    @Test
+    public void testStartupFailsOnMVStore() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(AccountServiceApplication.class)
+                .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:optimistic-mvstore",
+                        "--bank.transaction.concurrency-mode=OPTIMISTIC")) {
+            Assert.fail("Versioned updates are lost on MVStore, OPTIMISTIC mode must not start");
+        } catch (BeanCreationException e) {
+            Assert.assertTrue(NestedExceptionUtils.getMostSpecificCause(e) instanceof IllegalStateException);
+        }
+    }
+}
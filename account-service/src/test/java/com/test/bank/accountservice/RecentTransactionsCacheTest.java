@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.repository.projection.TransactionView;
+import com.test.bank.accountservice.service.RecentTransactionsCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+public class RecentTransactionsCacheTest {
+
+    @Test
+    public void testAppendAfterHydrationReadingItIsSkipped() {
+        final RecentTransactionsCache cache = new RecentTransactionsCache(5);
+        final TransactionView deposit = new TransactionView(7L, 100L, TransactionType.DEPOSIT, "Salary",
+                LocalDateTime.now(), null);
+
+        // The ring is hydrated after the deposit committed but before its append ran.
+        cache.recent(1L, () -> Collections.singletonList(deposit));
+        cache.append(1L, deposit);
+
+        Assert.assertEquals(Collections.singletonList(deposit), cache.recent(1L, Collections::emptyList));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.dto.AccountDTO;
+import com.test.bank.accountservice.dto.ResponseDTO;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.view.AccountServiceClient;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(locations = "classpath:db-test.properties")
+public class ServerTimingTest {
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    public void testDepositReportsItsPhases() throws Exception {
+        final AccountServiceClient client = new AccountServiceClient("http://localhost:" + port + "/api");
+        final ResponseDTO opened = client.openNewAccount(TestAccounts.openRequest());
+        final AccountDTO account = client.authenticate(opened.getAccountNumber(), "1234");
+
+        client.makeDeposit(account.getAccountId(), new TransactionRequestDTO(new BigDecimal(10), "Salary"));
+
+        final Map<String, Double> timings = client.getLastServerTiming();
+        Assert.assertTrue(timings.toString(), timings.keySet().containsAll(
+                Arrays.asList("queue", "lock", "load", "save", "commit", "serialize", "total")));
+        final double phases = timings.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals("total"))
+                .mapToDouble(Map.Entry::getValue)
+                .sum();
+        Assert.assertTrue(timings.toString(), phases <= timings.get("total"));
+    }
+
+    @Test
+    public void testStreamedStatementsAreNotBuffered() throws Exception {
+        final AccountServiceClient client = new AccountServiceClient("http://localhost:" + port + "/api");
+        final ResponseDTO opened = client.openNewAccount(TestAccounts.openRequest());
+        final AccountDTO account = client.authenticate(opened.getAccountNumber(), "1234");
+
+        final ResponseEntity<String> statement = restTemplate.getForEntity(
+                "/api/v1/accounts/{id}/statement", String.class, account.getAccountId());
+        Assert.assertEquals(HttpStatus.OK, statement.getStatusCode());
+        Assert.assertFalse(statement.getHeaders().containsKey(AccountServiceClient.SERVER_TIMING_HEADER));
+    }
+
+    @Test
+    public void testParsesServerTimingHeader() {
+        final Map<String, Double> timings = AccountServiceClient.parseServerTiming(
+                "lock;dur=0.012, cache;desc=\"hit\", load;desc=\"account\";dur=1.250, total;dur=3.400");
+        Assert.assertEquals(Arrays.asList("lock", "load", "total"), Arrays.asList(timings.keySet().toArray()));
+        Assert.assertEquals(1.25, timings.get("load"), 0);
+        Assert.assertTrue(AccountServiceClient.parseServerTiming(null).isEmpty());
+    }
+}
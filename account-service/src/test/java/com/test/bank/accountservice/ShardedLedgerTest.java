@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.concurrency.ShardedLedgerExecutor;
+import com.test.bank.accountservice.dto.TransactionRequestDTO;
+import com.test.bank.accountservice.dto.TransferRequestDTO;
+import com.test.bank.accountservice.exception.ApiException;
+import com.test.bank.accountservice.exception.ErrorReason;
+import com.test.bank.accountservice.exception.GlobalExceptionHandler;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.repository.AccountRepository;
+import com.test.bank.accountservice.service.AccountService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(locations = "classpath:db-test.properties", properties = {
+        "bank.transaction.concurrency-mode=SHARDED",
+        "bank.transaction.sharded.shards=4",
+        "bank.transaction.sharded.group-commit.window-ms=5"
+})
+public class ShardedLedgerTest {
+
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ShardedLedgerExecutor shardedLedgerExecutor;
+
+    @Test
+    public void testPostingsAreAppliedByShardThreads() throws Exception {
+        final Account account = TestAccounts.create(accountRepository);
+        accountService.makeDeposit(account.getId(), new TransactionRequestDTO(new BigDecimal(100), "Salary"));
+
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        try {
+                            accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(new BigDecimal(5), "ATM"));
+                            succeeded.incrementAndGet();
+                        } catch (ApiException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(20, succeeded.get());
+        Assert.assertEquals(60, rejected.get());
+        Assert.assertEquals(0, accountRepository.getRunningBalance(account.getId()).signum());
+    }
+
+    @Test(expected = ApiException.class)
+    public void testValidationErrorsAreRethrownToCaller() {
+        final Account account = TestAccounts.create(accountRepository);
+        accountService.makeWithdrawal(account.getId(), new TransactionRequestDTO(BigDecimal.TEN, "Overdraft"));
+    }
+
+    @Test
+    public void testTransfersAcrossShardsMixWithDeposits() throws Exception {
+        final Account first = TestAccounts.create(accountRepository);
+        Account second = TestAccounts.create(accountRepository);
+        while (shardThreadOf(first).equals(shardThreadOf(second))) {
+            second = TestAccounts.create(accountRepository);
+        }
+        final Account other = second;
+        Assert.assertTrue(shardedLedgerExecutor.execute(Arrays.asList(first.getId(), other.getId()),
+                () -> Thread.currentThread().getName()).startsWith("ledger-shard-"));
+        accountService.makeDeposit(first.getId(), new TransactionRequestDTO(new BigDecimal(1000), "Salary"));
+        accountService.makeDeposit(other.getId(), new TransactionRequestDTO(new BigDecimal(1000), "Salary"));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> repeat(() -> accountService.transfer(first.getId(),
+                        new TransferRequestDTO(other.getId(), BigDecimal.ONE, "Ping")))));
+                futures.add(executor.submit(() -> repeat(() -> accountService.transfer(other.getId(),
+                        new TransferRequestDTO(first.getId(), BigDecimal.ONE, "Pong")))));
+                futures.add(executor.submit(() -> repeat(() -> accountService.makeDeposit(first.getId(),
+                        new TransactionRequestDTO(BigDecimal.ONE, "Cash")))));
+                futures.add(executor.submit(() -> repeat(() -> accountService.makeDeposit(other.getId(),
+                        new TransactionRequestDTO(BigDecimal.ONE, "Cash")))));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(0, new BigDecimal(1100).compareTo(accountRepository.getRunningBalance(first.getId())));
+        Assert.assertEquals(0, new BigDecimal(1100).compareTo(accountRepository.getRunningBalance(other.getId())));
+        Assert.assertEquals(0, new BigDecimal(1100).compareTo(accountRepository.findById(first.getId()).get().getBalance()));
+        Assert.assertEquals(0, new BigDecimal(1100).compareTo(accountRepository.findById(other.getId()).get().getBalance()));
+    }
+
+    @Test
+    public void testOverloadedShardsAnswerServerErrors() throws Exception {
+        // One shard holding a single queued posting, waited for 200 ms at most.
+        final ShardedLedgerExecutor executor = new ShardedLedgerExecutor(transactionManager, 1, 1, 10, 200, 1, 0);
+        final GlobalExceptionHandler handler = new GlobalExceptionHandler();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture.runAsync(() -> executor.execute(1L, () -> {
+                started.countDown();
+                return awaitQuietly(release);
+            }));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // Queued behind the busy shard thread, so it is still waiting when the caller gives up.
+            final ApiException timeout = executeExpectingRejection(executor);
+            Assert.assertEquals(ErrorReason.TIMEOUT, timeout.getReason());
+            Assert.assertEquals(HttpStatus.GATEWAY_TIMEOUT, handler.handleApiException(timeout).getStatusCode());
+
+            final ApiException full = executeExpectingRejection(executor);
+            Assert.assertEquals(ErrorReason.SERVICE_UNAVAILABLE, full.getReason());
+            Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, handler.handleApiException(full).getStatusCode());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static ApiException executeExpectingRejection(ShardedLedgerExecutor executor) {
+        try {
+            executor.execute(1L, () -> Boolean.TRUE);
+        } catch (ApiException e) {
+            return e;
+        }
+        throw new AssertionError("The posting must be rejected");
+    }
+
+    private String shardThreadOf(Account account) {
+        return shardedLedgerExecutor.execute(account.getId(), () -> Thread.currentThread().getName());
+    }
+
+    private static void repeat(Runnable posting) {
+        for (int i = 0; i < 50; i++) {
+            posting.run();
+        }
+    }
+
+    private static Boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Boolean.FALSE;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.util.SnowflakeIdGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = 1571312096000L;
+
+    @Test
+    public void testEncodesTimestampAndNode() {
+        final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42, () -> NOW);
+        final long id = generator.nextId();
+        Assert.assertEquals(NOW, SnowflakeIdGenerator.timestampMillis(id));
+        Assert.assertEquals(42, SnowflakeIdGenerator.nodeId(id));
+    }
+
+    @Test
+    public void testIdsKeepIncreasingWhenTheClockStallsOrGoesBack() {
+        final AtomicLong clock = new AtomicLong(NOW);
+        final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+        long previous = generator.nextId();
+        for (int i = 0; i < 10000; i++) {
+            if (i == 5000) {
+                clock.addAndGet(-1000);
+            }
+            final long next = generator.nextId();
+            Assert.assertTrue(next > previous);
+            Assert.assertEquals(1, SnowflakeIdGenerator.nodeId(next));
+            previous = next;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNodeIdOutOfRange() {
+        new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1);
+    }
+}
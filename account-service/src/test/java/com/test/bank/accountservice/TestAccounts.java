@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.dto.AccountRequestDTO;
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.model.Account;
+import com.test.bank.accountservice.repository.AccountRepository;
+
+import java.util.UUID;
+
+/**
+ * Account fixtures shared by the tests.
+ */
+final class TestAccounts {
+
+    private TestAccounts() {
+    }
+
+    /**
+     * @return an active account of the test holder, not saved and without a number
+     */
+    static Account newAccount() {
+        final Account account = new Account();
+        account.setFirstName("Jaime");
+        account.setLastName("Flores");
+        account.setHolderId("522665465785546963");
+        account.setPin("1234");
+        account.setStatus(AccountStatus.ACTIVE);
+        return account;
+    }
+
+    /**
+     * Saves a new account of the test holder straight to the repository, with a random number.
+     */
+    static Account create(AccountRepository accountRepository) {
+        final Account account = newAccount();
+        account.setAccountNumber(UUID.randomUUID().toString());
+        return accountRepository.save(account);
+    }
+
+    /**
+     * @return a request opening an account of the test holder through the service
+     */
+    static AccountRequestDTO openRequest() {
+        return new AccountRequestDTO("Jaime", "Flores", "1234", "1234", UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.test.bank.accountservice;
+
+import com.test.bank.accountservice.enums.AccountStatus;
+import com.test.bank.accountservice.enums.TransactionType;
+import com.test.bank.accountservice.journal.JournalRecord;
+import com.test.bank.accountservice.journal.TransactionJournal;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransactionJournalTest {
+
+    private static final int SEGMENT_RECORDS = 4;
+
+    @Rule
+    public TemporaryFolder directory = new TemporaryFolder();
+
+    @Test
+    public void testRecordsAreReplayedInOrderAcrossSegmentsAfterReopening() {
+        final TransactionJournal journal = open();
+        for (int i = 1; i <= 10; i++) {
+            journal.awaitDurable(journal.append(record(i)));
+        }
+        journal.close();
+        Assert.assertEquals(3, segments().length);
+
+        final TransactionJournal reopened = open();
+        try {
+            final List<JournalRecord> records = replay(reopened, 0);
+            Assert.assertEquals(10, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                Assert.assertEquals(i + 1, records.get(i).getSequence());
+                Assert.assertEquals(100L * (i + 1), records.get(i).getBalanceMinor());
+                Assert.assertEquals(TransactionType.DEPOSIT, records.get(i).getTransactionType());
+            }
+            Assert.assertEquals(11, reopened.append(record(11)));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordEndsTheJournal() throws Exception {
+        final TransactionJournal journal = open();
+        for (int i = 1; i <= 6; i++) {
+            journal.append(record(i));
+        }
+        journal.close();
+
+        // Half of the last record reached the disk before the crash.
+        final File last = segments()[1];
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.seek(JournalRecord.SIZE + 8);
+            file.writeLong(0);
+        }
+
+        final TransactionJournal reopened = open();
+        try {
+            Assert.assertEquals(5, reopened.getAppendedSequence());
+            Assert.assertEquals(5, replay(reopened, 0).size());
+            Assert.assertEquals(6, reopened.append(record(60)));
+            Assert.assertEquals(60, replay(reopened, 5).get(0).getTransactionId());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testReplayStartsAfterTheCheckpoint() {
+        final TransactionJournal journal = open();
+        for (int i = 1; i <= 5; i++) {
+            journal.awaitDurable(journal.append(record(i)));
+        }
+        journal.checkpoint();
+        journal.append(record(6));
+        journal.append(record(7));
+        Assert.assertEquals(5, journal.getCheckpoint());
+
+        final List<JournalRecord> records = replay(journal, journal.getCheckpoint());
+        journal.close();
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(6, records.get(0).getSequence());
+
+        final TransactionJournal reopened = open();
+        reopened.close();
+        Assert.assertEquals(7, reopened.getCheckpoint());
+    }
+
+    @Test
+    public void testPruningKeepsTheRecordsAfterTheSnapshot() {
+        final TransactionJournal journal = open();
+        try {
+            for (int i = 1; i <= 10; i++) {
+                journal.append(record(i));
+            }
+            Assert.assertEquals(1, journal.prune(6));
+            Assert.assertEquals(1, journal.prune(8));
+            Assert.assertEquals(1, segments().length);
+            Assert.assertEquals(9, journal.getFirstSequence());
+            Assert.assertEquals(2, replay(journal, 8).size());
+            try {
+                replay(journal, 4);
+                Assert.fail("Records 5 to 8 were pruned");
+            } catch (IllegalStateException expected) {
+                // The gap is reported rather than skipped.
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    private TransactionJournal open() {
+        return new TransactionJournal(directory.getRoot().getAbsolutePath(), SEGMENT_RECORDS, 1);
+    }
+
+    private File[] segments() {
+        final File[] files = directory.getRoot().listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static List<JournalRecord> replay(TransactionJournal journal, long afterSequence) {
+        final List<JournalRecord> records = new ArrayList<>();
+        journal.replay(afterSequence, records::add);
+        return records;
+    }
+
+    private static JournalRecord record(long transactionId) {
+        return new JournalRecord(0, transactionId, 7L, TransactionType.DEPOSIT, AccountStatus.ACTIVE, 100L, 100L * transactionId,
+                transactionId, System.currentTimeMillis());
+    }
+}